@@ -0,0 +1,57 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Generates the text and ElasticSearch responses used by the benchmarks. Output is deterministic for a given seed.
+ */
+final class BenchmarkData {
+
+    static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    private static final String[] WORDS = {
+            "memex", "note", "index", "search", "document", "record", "archive", "reference", "link", "trail",
+            "association", "microfilm", "desk", "screen", "lever", "memory", "thought", "idea", "record's", "\"quoted\""
+    };
+
+    private BenchmarkData() { }
+
+    static String text(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * Builds a search response in the shape returned by ElasticSearch for the raw text index, with highlights
+     */
+    static String searchResponse(int hits, int textLength) {
+        LocalDateTime dateTime = LocalDateTime.of(2021, 3, 1, 12, 0);
+        StringBuilder response = new StringBuilder();
+        response.append("{\"took\":12,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},")
+                .append("\"hits\":{\"total\":{\"value\":").append(hits).append(",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            String id = String.format("60a7c1e2f1d3b24a5c%06d", i);
+            String date = DATE_TIME_FORMATTER.format(dateTime.minusMinutes(i));
+            if (i > 0) {
+                response.append(',');
+            }
+            response.append("{\"_index\":\"rawtext\",\"_type\":\"_doc\",\"_id\":\"").append(id).append("\",\"_score\":null,")
+                    .append("\"_source\":{\"id\":\"").append(id).append("\",\"textContent\":\"")
+                    .append(text(textLength, i).replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append("\",\"createDateTime\":\"").append(date).append("\",\"updateDateTime\":\"").append(date).append("\"},")
+                    .append("\"highlight\":{\"textContent\":[\"the <b><i>memex</i></b> index\",\"a <b><i>memex</i></b> trail\"]},")
+                    .append("\"sort\":[").append(1614600000000L - i * 60000L).append(']')
+                    .append('}');
+        }
+        response.append("]}}");
+        return response.toString();
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import com.matthewjohnson42.memex.data.converter.RawTextESConverter;
+import com.matthewjohnson42.memex.data.converter.RawTextMongoConverter;
+import com.matthewjohnson42.memex.data.converter.TextContentCodec;
+import com.matthewjohnson42.memex.data.dto.RawTextDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTO to entity to DTO round trips through the raw text converters
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+    @Param({"100", "10000"})
+    private int textLength;
+
+    // compresses the Mongo text content when above 1000 characters
+    @Param({"false", "true"})
+    private boolean compression;
+
+    private RawTextMongoConverter mongoConverter;
+    private final RawTextESConverter esConverter = new RawTextESConverter();
+    private RawTextDto dto;
+
+    @Setup
+    public void setup() {
+        mongoConverter = new RawTextMongoConverter(new TextContentCodec(compression, 1000));
+        LocalDateTime now = LocalDateTime.of(2021, 3, 1, 12, 0);
+        dto = new RawTextDto(BenchmarkData.text(textLength, 1)).setId("60a7c1e2f1d3b24a5c000001");
+        dto.setCreateDateTime(now).setUpdateDateTime(now);
+    }
+
+    @Benchmark
+    public RawTextDto mongoRoundTrip() {
+        return mongoConverter.convertEntity(mongoConverter.convertDto(dto));
+    }
+
+    @Benchmark
+    public String mongoRoundTripReadText() {
+        return mongoConverter.convertEntity(mongoConverter.convertDto(dto)).getTextContent();
+    }
+
+    @Benchmark
+    public RawTextDto esRoundTrip() {
+        return esConverter.convertEntity(esConverter.convertDto(dto));
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import com.matthewjohnson42.memex.data.converter.RawTextMongoConverter;
+import com.matthewjohnson42.memex.data.dto.RawTextDto;
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.service.DataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataService create, update and get against an in-memory repository, measuring the service and converter overhead
+ * that is paid on top of every data store round trip
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataServiceBenchmark {
+
+    private static final int STORED = 1024;
+
+    @Param({"100", "10000"})
+    private int textLength;
+
+    private RawTextDataService dataService;
+    private List<String> ids;
+    private String text;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataService = new RawTextDataService(new RawTextMongoConverter(), new InMemoryRawTextRepository());
+        text = BenchmarkData.text(textLength, 1);
+        ids = new ArrayList<>(STORED);
+        for (int i = 0; i < STORED; i++) {
+            String id = String.format("60a7c1e2f1d3b24a5c%06d", i);
+            dataService.create(new RawTextDto(text).setId(id));
+            ids.add(id);
+        }
+    }
+
+    @Benchmark
+    public RawTextDto create() {
+        return dataService.create(new RawTextDto(text).setId(nextId()));
+    }
+
+    @Benchmark
+    public RawTextDto update() {
+        return dataService.update(new RawTextDto(text).setId(nextId()));
+    }
+
+    @Benchmark
+    public RawTextDto getById() {
+        return dataService.getById(nextId());
+    }
+
+    private String nextId() {
+        next = (next + 1) & (STORED - 1);
+        return ids.get(next);
+    }
+
+    private static class RawTextDataService extends DataService<String, RawTextDto, RawTextMongo> {
+
+        private RawTextDataService(RawTextMongoConverter converter, InMemoryRawTextRepository repository) {
+            super(converter, repository);
+        }
+
+    }
+
+}
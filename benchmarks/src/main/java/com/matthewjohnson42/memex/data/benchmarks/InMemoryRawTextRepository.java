@@ -0,0 +1,97 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Repository stub holding entities in memory, so that service benchmarks measure the library rather than a data store.
+ * Entities are copied on the way in and out, as a data store would.
+ */
+class InMemoryRawTextRepository implements Repository<RawTextMongo, String> {
+
+    private final Map<String, RawTextMongo> entities = new ConcurrentHashMap<>();
+
+    @Override
+    public RawTextMongo save(RawTextMongo e) {
+        entities.put(e.getId(), new RawTextMongo(e));
+        return e;
+    }
+
+    @Override
+    public Optional<RawTextMongo> findById(String id) {
+        RawTextMongo entity = entities.get(id);
+        return entity == null ? Optional.empty() : Optional.of(new RawTextMongo(entity));
+    }
+
+    @Override
+    public void deleteById(String id) {
+        entities.remove(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return entities.containsKey(id);
+    }
+
+    @Override
+    public Optional<RawTextMongo> findMetadataById(String id) {
+        return findById(id).map(entity -> entity.setTextContent(null));
+    }
+
+    @Override
+    public Optional<RawTextMongo> patch(String id, RawTextMongo changes, Long expectedVersion) {
+        RawTextMongo patched = entities.computeIfPresent(id, (key, stored) -> {
+            RawTextMongo entity = new RawTextMongo(stored);
+            if (changes.getTextContent() != null) {
+                entity.setTextContent(changes.getTextContent());
+            }
+            if (changes.getUpdateDateTime() != null) {
+                entity.setUpdateDateTime(changes.getUpdateDateTime());
+            }
+            entity.setVersion(stored.getVersion() == null ? 1L : stored.getVersion() + 1);
+            return entity;
+        });
+        return patched == null ? Optional.empty() : Optional.of(new RawTextMongo(patched));
+    }
+
+    @Override
+    public <S extends RawTextMongo> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            save(entity);
+            saved.add(entity);
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<RawTextMongo> findAllById(Iterable<String> ids) {
+        List<RawTextMongo> found = new ArrayList<>();
+        for (String id : ids) {
+            findById(id).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        for (String id : ids) {
+            deleteById(id);
+        }
+    }
+
+    @Override
+    public Stream<RawTextMongo> streamAll(int batchSize, String afterId) {
+        ConcurrentSkipListMap<String, RawTextMongo> sorted = new ConcurrentSkipListMap<>(entities);
+        return (afterId == null ? sorted : sorted.tailMap(afterId, false)).values().stream().map(RawTextMongo::new);
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESQueries;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextSearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of raw text search request bodies
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchQueryBenchmark {
+
+    private final RawTextESQueries queries = new RawTextESQueries(new JsonFactory(), BenchmarkData.DATE_TIME_FORMATTER);
+
+    private final LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private final LocalDateTime end = LocalDateTime.of(2021, 12, 31, 23, 59);
+
+    @Benchmark
+    public byte[] fuzzySearchWithDateFilters() {
+        return queries.search(new RawTextSearchQuery("memex \"trail\" index")
+                .setCreateDateRange(start, end)
+                .setUpdateDateRange(start, end)
+                .setPage(PageRequest.of(2, 20)));
+    }
+
+    @Benchmark
+    public byte[] fuzzySearchWithoutFilters() {
+        return queries.search(new RawTextSearchQuery("memex trail").setPage(PageRequest.of(0, 20)));
+    }
+
+    @Benchmark
+    public byte[] cursorSearch() {
+        return queries.search(new RawTextSearchQuery("memex trail")
+                .setSize(20)
+                .setPit("46ToAwMDaWR5BXV1aWQyKwZub2RlXzMAAAAAAAAAACoBYwADaWR4BXV1aWQxAgZub2RlXzEAAAAAAAAAAAEBYQADaWR5BXV1aWQyKgZub2RlXzIAAAAAAAAAAAwBYgACBXV1aWQyAAAFdXVpZDEAAQltYXRjaF9hbGw_gAAAAA==", "1m")
+                .setSearchAfter(Arrays.asList(1614600000000L, "60a7c1e2f1d3b24a5c000019")));
+    }
+
+    @Benchmark
+    public byte[] searchById() {
+        return queries.searchById("60a7c1e2f1d3b24a5c000001");
+    }
+
+}
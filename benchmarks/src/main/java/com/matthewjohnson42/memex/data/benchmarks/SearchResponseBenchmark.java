@@ -0,0 +1,64 @@
+package com.matthewjohnson42.memex.data.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESSearchResult;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESWrapper;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESSearchResponseExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading search responses of several sizes, through data binding to {@link RawTextESWrapper} and through the
+ * streaming {@link RawTextESSearchResponseExtractor} used by the rest template
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchResponseBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int hits;
+
+    @Param({"1000", "50000"})
+    private int textLength;
+
+    // configured like the mapper of the rest template's message converter
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final RawTextESSearchResponseExtractor extractor =
+            new RawTextESSearchResponseExtractor(objectMapper.getFactory(), BenchmarkData.DATE_TIME_FORMATTER);
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        response = BenchmarkData.searchResponse(hits, textLength).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public RawTextESWrapper dataBinding() throws IOException {
+        return objectMapper.readValue(response, RawTextESWrapper.class);
+    }
+
+    @Benchmark
+    public RawTextESSearchResult streamingExtractor() throws IOException {
+        return extractor.read(new ByteArrayInputStream(response));
+    }
+
+}
@@ -2,6 +2,7 @@ package com.matthewjohnson42.memex.data.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -13,7 +14,7 @@ import java.io.InputStreamReader;
 
 @Profile("enableelasticrepositories")
 @Configuration
-public abstract class AbstractElasticConfiguration {
+public abstract class AbstractElasticConfiguration implements DisposableBean {
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -23,8 +24,67 @@ public abstract class AbstractElasticConfiguration {
     @Value("${db.elasticsearch.port}")
     private String hostPort;
 
+    @Value("${db.elasticsearch.http.maxconnections:50}")
+    private int httpMaxConnections;
+
+    @Value("${db.elasticsearch.http.maxconnectionsperroute:20}")
+    private int httpMaxConnectionsPerRoute;
+
+    @Value("${db.elasticsearch.http.connecttimeoutms:5000}")
+    private int httpConnectTimeoutMillis;
+
+    @Value("${db.elasticsearch.http.readtimeoutms:30000}")
+    private int httpReadTimeoutMillis;
+
+    @Value("${db.elasticsearch.http.connectionrequesttimeoutms:5000}")
+    private int httpConnectionRequestTimeoutMillis;
+
+    @Value("${db.elasticsearch.http.keepalivems:60000}")
+    private long httpKeepAliveMillis;
+
+    @Value("${db.elasticsearch.http.compression:true}")
+    private boolean httpCompression;
+
+    @Value("${db.elasticsearch.http.compressionthresholdbytes:8192}")
+    private int httpCompressionThresholdBytes;
+
+    // largest response body the non-blocking clients decode in memory, such as a multi get or an update returning the source
+    @Value("${db.elasticsearch.http.maxinmemorybytes:104857600}")
+    private int httpMaxInMemoryBytes;
+
+    @Value("${db.elasticsearch.bulk.actions:1000}")
+    private int bulkActions;
+
+    @Value("${db.elasticsearch.bulk.bytes:5242880}")
+    private long bulkBytes;
+
+    @Value("${db.elasticsearch.bulk.flushintervalms:1000}")
+    private long bulkFlushIntervalMillis;
+
+    @Value("${db.elasticsearch.bulk.concurrentrequests:2}")
+    private int bulkConcurrentRequests;
+
+    @Value("${db.elasticsearch.bulk.maxretries:5}")
+    private int bulkMaxRetries;
+
+    @Value("${db.elasticsearch.bulk.backoffms:100}")
+    private long bulkBackoffMillis;
+
+    // builds a new index version in the background when the mapping of the index resource changes
+    @Value("${db.elasticsearch.index.reindexonchange:true}")
+    private boolean indexReindexOnChange;
+
+    // deletes the previous index version once the alias has moved, otherwise it is kept for rollback
+    @Value("${db.elasticsearch.index.deleteprevious:false}")
+    private boolean indexDeletePrevious;
+
+    @Value("${db.elasticsearch.index.reindexpollms:5000}")
+    private long indexReindexPollMillis;
+
     protected String createIndexResourceFile;
 
+    private ElasticHttpTransport httpTransport;
+
     public final String getHostName() {
         return hostName;
     }
@@ -33,10 +93,99 @@ public abstract class AbstractElasticConfiguration {
         return hostPort;
     }
 
+    public final int getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public final int getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    public final int getHttpConnectTimeoutMillis() {
+        return httpConnectTimeoutMillis;
+    }
+
+    public final int getHttpReadTimeoutMillis() {
+        return httpReadTimeoutMillis;
+    }
+
+    public final int getHttpConnectionRequestTimeoutMillis() {
+        return httpConnectionRequestTimeoutMillis;
+    }
+
+    public final long getHttpKeepAliveMillis() {
+        return httpKeepAliveMillis;
+    }
+
+    public final boolean isHttpCompression() {
+        return httpCompression;
+    }
+
+    public final int getHttpCompressionThresholdBytes() {
+        return httpCompressionThresholdBytes;
+    }
+
+    public final int getHttpMaxInMemoryBytes() {
+        return httpMaxInMemoryBytes;
+    }
+
+    /**
+     * Returns the pooled transport shared by every rest template built from this configuration
+     */
+    public final synchronized ElasticHttpTransport getHttpTransport() {
+        if (httpTransport == null) {
+            httpTransport = new ElasticHttpTransport(this);
+        }
+        return httpTransport;
+    }
+
+    public final int getBulkActions() {
+        return bulkActions;
+    }
+
+    public final long getBulkBytes() {
+        return bulkBytes;
+    }
+
+    public final long getBulkFlushIntervalMillis() {
+        return bulkFlushIntervalMillis;
+    }
+
+    public final int getBulkConcurrentRequests() {
+        return bulkConcurrentRequests;
+    }
+
+    public final int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    public final long getBulkBackoffMillis() {
+        return bulkBackoffMillis;
+    }
+
+    public final boolean isIndexReindexOnChange() {
+        return indexReindexOnChange;
+    }
+
+    public final boolean isIndexDeletePrevious() {
+        return indexDeletePrevious;
+    }
+
+    public final long getIndexReindexPollMillis() {
+        return indexReindexPollMillis;
+    }
+
     public String getCreateIndex() {
         return readResource(createIndexResourceFile);
     }
 
+    @Override
+    public synchronized void destroy() throws IOException {
+        if (httpTransport != null) {
+            httpTransport.close();
+        }
+    }
+
     protected String readResource(String resource) {
         StringBuilder sb = new StringBuilder();
         ClassPathResource classPathResource = new ClassPathResource(resource);
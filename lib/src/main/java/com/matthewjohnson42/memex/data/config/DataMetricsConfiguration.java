@@ -0,0 +1,24 @@
+package com.matthewjohnson42.memex.data.config;
+
+import com.matthewjohnson42.memex.data.metrics.DataMetrics;
+import com.matthewjohnson42.memex.data.metrics.DataTracer;
+import com.matthewjohnson42.memex.data.metrics.MicrometerDataMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the {@link DataMetrics} injected into data services and ElasticSearch clients.
+ * Metrics are recorded when the application defines a MeterRegistry bean, and are a no-op otherwise.
+ */
+@Configuration
+public class DataMetricsConfiguration {
+
+    @Bean
+    public DataMetrics dataMetrics(ObjectProvider<MeterRegistry> meterRegistry, ObjectProvider<DataTracer> dataTracer) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return registry == null ? DataMetrics.NOOP : new MicrometerDataMetrics(registry, dataTracer.getIfAvailable());
+    }
+
+}
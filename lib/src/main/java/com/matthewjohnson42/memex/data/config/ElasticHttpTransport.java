@@ -0,0 +1,132 @@
+package com.matthewjohnson42.memex.data.config;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pooled HTTP transport shared by the ElasticSearch rest templates of a configuration.
+ * Connections are kept alive between requests, and bodies are gzip compressed in both directions when enabled.
+ *
+ * @see AbstractElasticConfiguration#getHttpTransport()
+ */
+public class ElasticHttpTransport implements Closeable {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ClientHttpRequestFactory requestFactory;
+    private final ClientHttpRequestInterceptor compressionInterceptor;
+
+    public ElasticHttpTransport(AbstractElasticConfiguration config) {
+        connectionManager = new PoolingHttpClientConnectionManager(config.getHttpKeepAliveMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(config.getHttpMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getHttpMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getHttpConnectTimeoutMillis())
+                .setSocketTimeout(config.getHttpReadTimeoutMillis())
+                .setConnectionRequestTimeout(config.getHttpConnectionRequestTimeoutMillis())
+                .build();
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getHttpKeepAliveMillis()))
+                .evictIdleConnections(config.getHttpKeepAliveMillis(), TimeUnit.MILLISECONDS);
+        if (!config.isHttpCompression()) {
+            builder.disableContentCompression();
+        }
+        httpClient = builder.build();
+        requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        compressionInterceptor = config.isHttpCompression()
+                ? new GzipRequestInterceptor(config.getHttpCompressionThresholdBytes())
+                : null;
+    }
+
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * @return the interceptor compressing request bodies, or null if compression is disabled
+     */
+    public ClientHttpRequestInterceptor getCompressionInterceptor() {
+        return compressionInterceptor;
+    }
+
+    /**
+     * @return leased, pending, available and maximum connection counts across all routes
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    // honor the keep-alive timeout sent by the server, otherwise reuse connections for the configured duration
+    private ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+        return (response, context) -> {
+            HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, keepAliveMillis);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+            return keepAliveMillis;
+        };
+    }
+
+    /**
+     * Gzip compresses request bodies larger than a threshold, such as documents with large text content
+     */
+    private static class GzipRequestInterceptor implements ClientHttpRequestInterceptor {
+
+        private final int thresholdBytes;
+
+        private GzipRequestInterceptor(int thresholdBytes) {
+            this.thresholdBytes = thresholdBytes;
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+            if (body.length < thresholdBytes || request.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return execution.execute(request, body);
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return execution.execute(request, compressed.toByteArray());
+        }
+
+    }
+
+}
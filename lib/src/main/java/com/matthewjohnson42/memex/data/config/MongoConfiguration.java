@@ -2,6 +2,10 @@ package com.matthewjohnson42.memex.data.config;
 
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -32,10 +36,18 @@ public class MongoConfiguration extends AbstractMongoClientConfiguration {
     @Value("${db.mongo.port}")
     private String dbPort;
 
+    // times each Mongo command (mongodb.driver.commands) when the application has a meter registry
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
     @Override
     public void configureClientSettings(MongoClientSettings.Builder builder) {
         ConnectionString connectionString = new ConnectionString(String.format("mongodb://%s:%s", hostName, dbPort));
         builder.applyConnectionString(connectionString);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            builder.addCommandListener(new MongoMetricsCommandListener(registry));
+        }
     }
 
     @Override
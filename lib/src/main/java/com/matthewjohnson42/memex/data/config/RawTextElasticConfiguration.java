@@ -1,5 +1,6 @@
 package com.matthewjohnson42.memex.data.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
@@ -7,16 +8,33 @@ import org.springframework.context.annotation.Profile;
 @Configuration
 public class RawTextElasticConfiguration extends AbstractElasticConfiguration {
 
+    // stores term vectors with offsets for the text content, for the fast vector highlighter, at the cost of index size
+    @Value("${db.elasticsearch.rawtext.termvectors:false}")
+    private boolean termVectors;
+
+    // returns the text content of search hits, otherwise hits carry only their metadata and highlights
+    @Value("${db.elasticsearch.rawtext.search.textcontent:true}")
+    private boolean searchTextContent;
+
     public RawTextElasticConfiguration() {
         this.createIndexResourceFile = "elasticsearchqueries/rawTextCreateIndex.json";
     }
 
-    public String getRawTextSearchById() {
-        return readResource("elasticsearchqueries/rawTextSearchById.json");
+    public final boolean isTermVectors() {
+        return termVectors;
+    }
+
+    public final boolean isSearchTextContent() {
+        return searchTextContent;
     }
 
-    public String getRawTextSearchByTextContentFuzzy() {
-        return readResource("elasticsearchqueries/rawTextSearchByTextContentFuzzy.json");
+    /**
+     * Returns the term vector variant of the create index command if term vectors are enabled. Changing the variant
+     * changes the index version, so the index is rebuilt in the background.
+     */
+    @Override
+    public String getCreateIndex() {
+        return readResource(termVectors ? "elasticsearchqueries/rawTextCreateIndexTermVectors.json" : createIndexResourceFile);
     }
 
 }
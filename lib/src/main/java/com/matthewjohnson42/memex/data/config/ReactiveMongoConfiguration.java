@@ -0,0 +1,49 @@
+package com.matthewjohnson42.memex.data.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.config.AbstractReactiveMongoConfiguration;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+/**
+ * Class that provides a reactive MongoClient and a ReactiveMongoTemplate for non-blocking access to MongoDB.
+ * Used in place of {@link MongoConfiguration}, the two profiles define the same mapping beans.
+ */
+@Profile("enablereactivemongorepositories")
+@EnableReactiveMongoRepositories("com.matthewjohnson42.memex")
+@Configuration
+public class ReactiveMongoConfiguration extends AbstractReactiveMongoConfiguration {
+
+    @Value("${db.mongo.host}")
+    private String hostName;
+
+    @Value("${db.mongo.port}")
+    private String dbPort;
+
+    // times each Mongo command (mongodb.driver.commands) when the application has a meter registry
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Override
+    public void configureClientSettings(MongoClientSettings.Builder builder) {
+        ConnectionString connectionString = new ConnectionString(String.format("mongodb://%s:%s", hostName, dbPort));
+        builder.applyConnectionString(connectionString);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            builder.addCommandListener(new MongoMetricsCommandListener(registry));
+        }
+    }
+
+    @Override
+    protected String getDatabaseName() {
+        return "memex";
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.matthewjohnson42.memex.data.config;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.repository.CachingRepository;
+import com.matthewjohnson42.memex.data.repository.mongo.RawTextMongoRepo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Class that provides read-through caches in front of the Mongo repositories.
+ * The cached repository is the primary bean of its repository type, so data services depending on the repository
+ * type serve repeated reads of an id from memory.
+ */
+@Profile("enablemongorepositories & enablerepositorycache")
+@Configuration
+public class RepositoryCacheConfiguration {
+
+    @Value("${db.cache.maxentries:10000}")
+    private int maxEntries;
+
+    // total characters of cached text content, or bytes when stored compressed
+    @Value("${db.cache.maxweight:67108864}")
+    private long maxWeight;
+
+    @Value("${db.cache.ttlms:60000}")
+    private long ttlMillis;
+
+    @Primary
+    @Bean
+    public CachingRepository<RawTextMongo, String> cachingRawTextMongoRepo(RawTextMongoRepo rawTextMongoRepo) {
+        return new CachingRepository<>(
+                rawTextMongoRepo,
+                RawTextMongo::new,
+                RepositoryCacheConfiguration::textContentWeight,
+                maxEntries,
+                maxWeight,
+                Duration.ofMillis(ttlMillis));
+    }
+
+    private static int textContentWeight(RawTextMongo rawTextMongo) {
+        if (rawTextMongo.getTextContent() != null) {
+            return rawTextMongo.getTextContent().length();
+        }
+        return rawTextMongo.getCompressedTextContent() == null ? 0 : rawTextMongo.getCompressedTextContent().length;
+    }
+
+}
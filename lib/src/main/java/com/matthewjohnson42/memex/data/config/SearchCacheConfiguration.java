@@ -0,0 +1,46 @@
+package com.matthewjohnson42.memex.data.config;
+
+import com.matthewjohnson42.memex.data.repository.CachingRawTextSearchRepository;
+import com.matthewjohnson42.memex.data.repository.RawTextSearchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Class that provides a cache of raw text search results in front of the search repository of the active profile.
+ * The cache is the primary search repository. Any write to the underlying index invalidates the cached searches.
+ */
+@Profile("enablesearchcache & (enableelasticrepositories | enablelucenerepositories)")
+@Configuration
+public class SearchCacheConfiguration {
+
+    @Value("${db.searchcache.maxentries:1000}")
+    private int maxEntries;
+
+    // total characters of cached text content and highlights
+    @Value("${db.searchcache.maxweight:33554432}")
+    private long maxWeight;
+
+    @Value("${db.searchcache.ttlms:30000}")
+    private long ttlMillis;
+
+    // searches are not cached for this long after a write, the default matches the ElasticSearch refresh interval
+    @Value("${db.searchcache.settlems:1000}")
+    private long settleMillis;
+
+    @Primary
+    @Bean
+    public CachingRawTextSearchRepository cachingRawTextSearchRepository(RawTextSearchRepository rawTextSearchRepository) {
+        return new CachingRawTextSearchRepository(
+                rawTextSearchRepository,
+                maxEntries,
+                maxWeight,
+                Duration.ofMillis(ttlMillis),
+                Duration.ofMillis(settleMillis));
+    }
+
+}
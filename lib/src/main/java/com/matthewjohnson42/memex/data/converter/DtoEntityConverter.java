@@ -37,6 +37,9 @@ public interface DtoEntityConverter<ID, D extends DtoForEntity<ID>, E extends En
         if (e.getUpdateDateTime() != null) {
             d.setUpdateDateTime(e.getUpdateDateTime());
         }
+        if (e.getVersion() != null) {
+            d.setVersion(e.getVersion());
+        }
         return d;
     }
 
@@ -2,16 +2,29 @@ package com.matthewjohnson42.memex.data.converter;
 
 import com.matthewjohnson42.memex.data.dto.RawTextDto;
 import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
- * Entity/DTO converter for raw text Mongo data
+ * Entity/DTO converter for raw text Mongo data.
+ * Text content is compressed into the entity when enabled on the codec, and decompressed when the DTO text is first read.
  */
 @Profile("enablemongorepositories")
 @Component
 public class RawTextMongoConverter implements DtoEntityConverter<String, RawTextDto, RawTextMongo> {
 
+    private final TextContentCodec codec;
+
+    public RawTextMongoConverter() {
+        this(TextContentCodec.decodeOnly());
+    }
+
+    @Autowired
+    public RawTextMongoConverter(TextContentCodec codec) {
+        this.codec = codec;
+    }
+
     public RawTextDto convertEntity(RawTextMongo rawTextMongo) {
         return updateFromEntity(new RawTextDto(), rawTextMongo);
     }
@@ -25,14 +38,22 @@ public class RawTextMongoConverter implements DtoEntityConverter<String, RawText
         rawTextDto = DtoEntityConverter.super.updateFromEntity(rawTextDto, rawTextMongo);
         if (rawTextMongo.getTextContent() != null) {
             rawTextDto.setTextContent(rawTextMongo.getTextContent());
+        } else if (rawTextMongo.getCompressedTextContent() != null) {
+            byte[] compressedTextContent = rawTextMongo.getCompressedTextContent();
+            rawTextDto.setLazyTextContent(() -> codec.decode(compressedTextContent));
+        } else if (rawTextMongo.getTextContentFileId() != null) {
+            rawTextDto.setTextContentLength(rawTextMongo.getTextContentLength());
         }
         return rawTextDto;
     }
 
     public RawTextMongo updateFromDto(RawTextMongo rawTextMongo, RawTextDto rawTextDto) {
         rawTextMongo = DtoEntityConverter.super.updateFromDto(rawTextMongo, rawTextDto);
-        if (rawTextDto.getTextContent() != null) {
-            rawTextMongo.setTextContent(rawTextDto.getTextContent());
+        String textContent = rawTextDto.getTextContent();
+        if (textContent != null) {
+            byte[] compressedTextContent = codec.encode(textContent);
+            rawTextMongo.setTextContent(compressedTextContent == null ? textContent : null);
+            rawTextMongo.setCompressedTextContent(compressedTextContent);
         }
         return rawTextMongo;
     }
@@ -0,0 +1,88 @@
+package com.matthewjohnson42.memex.data.converter;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LZ4 codec for large text content stored in Mongo.
+ * Encoded values start with a marker byte and a format byte, followed by the length of the UTF-8 text and the
+ * compressed block, so that the format can change without rewriting stored documents.
+ *
+ * @see RawTextMongoConverter
+ */
+@Profile("enablemongorepositories")
+@Component
+public class TextContentCodec {
+
+    public static final byte MARKER = (byte) 0xC7;
+    public static final byte FORMAT_LZ4 = 1;
+
+    private static final int HEADER_LENGTH = 6;
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final boolean enabled;
+    private final int minChars;
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+
+    public TextContentCodec(@Value("${db.mongo.compression.enabled:false}") boolean enabled,
+                            @Value("${db.mongo.compression.minchars:8192}") int minChars) {
+        this.enabled = enabled;
+        this.minChars = minChars;
+    }
+
+    /**
+     * @return a codec that never compresses, but still decodes previously compressed text content
+     */
+    public static TextContentCodec decodeOnly() {
+        return new TextContentCodec(false, Integer.MAX_VALUE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the encoded text, or null if compression is disabled, the text is shorter than the threshold or the
+     * text does not compress
+     */
+    public byte[] encode(String text) {
+        if (!enabled || text == null || text.length() < minChars) {
+            return null;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = new byte[HEADER_LENGTH + compressor.maxCompressedLength(utf8.length)];
+        int compressedLength = compressor.compress(utf8, 0, utf8.length, encoded, HEADER_LENGTH);
+        if (HEADER_LENGTH + compressedLength >= utf8.length) {
+            return null;
+        }
+        ByteBuffer.wrap(encoded).put(MARKER).put(FORMAT_LZ4).putInt(utf8.length);
+        byte[] trimmed = new byte[HEADER_LENGTH + compressedLength];
+        System.arraycopy(encoded, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    public String decode(byte[] encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        if (encoded.length < HEADER_LENGTH || encoded[0] != MARKER) {
+            throw new IllegalArgumentException("Text content is not in a compressed format");
+        }
+        if (encoded[1] != FORMAT_LZ4) {
+            throw new IllegalArgumentException(String.format("Unsupported text content compression format %d", encoded[1]));
+        }
+        int length = ByteBuffer.wrap(encoded, 2, 4).getInt();
+        byte[] utf8 = new byte[length];
+        decompressor.decompress(encoded, HEADER_LENGTH, utf8, 0, length);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+}
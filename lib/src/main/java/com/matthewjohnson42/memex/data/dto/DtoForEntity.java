@@ -23,12 +23,14 @@ public abstract class DtoForEntity<ID> implements Serializable {
     private LocalDateTime createDateTime;
     @JsonIgnore
     private LocalDateTime updateDateTime;
+    private Long version;
 
     public DtoForEntity() { }
 
     public DtoForEntity(DtoForEntity<ID> dto) {
         this.createDateTime = dto.getCreateDateTime();
         this.updateDateTime = dto.getUpdateDateTime();
+        this.version = dto.getVersion();
     }
 
     public abstract ID getId();
@@ -59,4 +61,14 @@ public abstract class DtoForEntity<ID> implements Serializable {
         return updateDateTime;
     }
 
+    // deserialized so that a client can send back the version it read, updates fail if it is no longer current
+    public DtoForEntity setVersion(Long version) {
+        this.version = version;
+        return this;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
 }
@@ -4,6 +4,10 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.function.Supplier;
+
 /**
  * A DTO representing the raw text entity as handled by the controller.
  * Raw text entity is only text and DB tracking information
@@ -13,13 +17,19 @@ public class RawTextDto extends DtoForEntity<String> {
     @JsonIgnore // along with getter and setter annotations, do not deserialize value
     private String id;
     private String textContent;
+    // decodes the text content on first access, set when the entity stores it compressed
+    private transient Supplier<String> textContentSource;
+    // set instead of the text content when it is stored in chunks, read with DataService#openContentReader
+    private Long textContentLength;
 
     public RawTextDto() { }
 
     public RawTextDto(RawTextDto rawTextDto) {
         super(rawTextDto);
         this.id = rawTextDto.getId();
-        this.textContent = rawTextDto.getTextContent();
+        this.textContent = rawTextDto.textContent;
+        this.textContentSource = rawTextDto.textContentSource;
+        this.textContentLength = rawTextDto.getTextContentLength();
     }
 
     @JsonCreator
@@ -42,11 +52,43 @@ public class RawTextDto extends DtoForEntity<String> {
 
     public RawTextDto setTextContent(String textContent) {
         this.textContent = textContent;
+        this.textContentSource = null;
+        return this;
+    }
+
+    /**
+     * Sets the text content to be computed when first read
+     */
+    @JsonIgnore
+    public RawTextDto setLazyTextContent(Supplier<String> textContentSource) {
+        this.textContent = null;
+        this.textContentSource = textContentSource;
         return this;
     }
 
     public String getTextContent() {
+        Supplier<String> source = textContentSource;
+        if (source != null) {
+            textContent = source.get();
+            textContentSource = null;
+        }
         return textContent;
     }
 
+    @JsonProperty
+    public Long getTextContentLength() {
+        return textContentLength;
+    }
+
+    @JsonIgnore
+    public RawTextDto setTextContentLength(Long textContentLength) {
+        this.textContentLength = textContentLength;
+        return this;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getTextContent();
+        out.defaultWriteObject();
+    }
+
 }
@@ -17,6 +17,7 @@ public abstract class Entity<ID> implements Serializable {
 
     private LocalDateTime createDateTime;
     private LocalDateTime updateDateTime;
+    private Long version;
 
     public abstract ID getId();
 
@@ -27,6 +28,7 @@ public abstract class Entity<ID> implements Serializable {
     public Entity(Entity<ID> entity) {
         this.createDateTime = entity.getCreateDateTime();
         this.updateDateTime = entity.getUpdateDateTime();
+        this.version = entity.getVersion();
     }
 
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
@@ -49,4 +51,17 @@ public abstract class Entity<ID> implements Serializable {
         return this;
     }
 
+    /**
+     * Incremented by {@link com.matthewjohnson42.memex.data.repository.Repository#patch} on every partial update.
+     * Entities written before versioning was introduced have a null version, treated as 0.
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public Entity setVersion(Long version) {
+        this.version = version;
+        return this;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.matthewjohnson42.memex.data.entity.elasticsearch;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.matthewjohnson42.memex.data.entity.Entity;
 
 /**
@@ -10,6 +11,11 @@ public class RawTextES extends Entity<String> {
 
     private String id;
     private String textContent;
+    // ElasticSearch metadata of the read document, used for optimistic concurrency control; not part of the source
+    @JsonIgnore
+    private Long seqNo;
+    @JsonIgnore
+    private Long primaryTerm;
 
     public RawTextES() { }
 
@@ -17,6 +23,8 @@ public class RawTextES extends Entity<String> {
         super(rawTextES);
         this.id = rawTextES.getId();
         this.textContent = rawTextES.getTextContent();
+        this.seqNo = rawTextES.getSeqNo();
+        this.primaryTerm = rawTextES.getPrimaryTerm();
     }
 
     @Override
@@ -38,4 +46,26 @@ public class RawTextES extends Entity<String> {
         return this;
     }
 
+    @JsonIgnore
+    public Long getSeqNo() {
+        return seqNo;
+    }
+
+    @JsonIgnore
+    public RawTextES setSeqNo(Long seqNo) {
+        this.seqNo = seqNo;
+        return this;
+    }
+
+    @JsonIgnore
+    public Long getPrimaryTerm() {
+        return primaryTerm;
+    }
+
+    @JsonIgnore
+    public RawTextES setPrimaryTerm(Long primaryTerm) {
+        this.primaryTerm = primaryTerm;
+        return this;
+    }
+
 }
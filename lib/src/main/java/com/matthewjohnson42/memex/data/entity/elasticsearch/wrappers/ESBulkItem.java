@@ -0,0 +1,44 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+public class ESBulkItem {
+
+    private String _id;
+    private int status;
+    private String result;
+    private ESError error;
+
+    public ESBulkItem() { }
+
+    public String get_id() {
+        return _id;
+    }
+
+    public void set_id(String _id) {
+        this._id = _id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public ESError getError() {
+        return error;
+    }
+
+    public void setError(ESError error) {
+        this.error = error;
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of the ElasticSearch _bulk API. Each item is keyed by its action ("index", "delete", ...) and is
+ * returned in the order the actions were submitted.
+ */
+public class ESBulkResponse {
+
+    private int took;
+    private boolean errors;
+    private List<Map<String, ESBulkItem>> items;
+
+    public ESBulkResponse() { }
+
+    public int getTook() {
+        return took;
+    }
+
+    public void setTook(int took) {
+        this.took = took;
+    }
+
+    public boolean isErrors() {
+        return errors;
+    }
+
+    public void setErrors(boolean errors) {
+        this.errors = errors;
+    }
+
+    public List<Map<String, ESBulkItem>> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Map<String, ESBulkItem>> items) {
+        this.items = items;
+    }
+
+    public ESBulkItem getItem(int index) {
+        return items.get(index).values().iterator().next();
+    }
+
+}
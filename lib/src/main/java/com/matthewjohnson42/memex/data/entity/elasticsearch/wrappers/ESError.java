@@ -0,0 +1,33 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+public class ESError {
+
+    private String type;
+    private String reason;
+
+    public ESError() { }
+
+    public String getType() {
+        return type;
+    }
+
+    public ESError setType(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public ESError setReason(String reason) {
+        this.reason = reason;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return type + ": " + reason;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+
+public class RawTextESDoc {
+
+    private String _id;
+    private boolean found;
+    private RawTextES _source;
+    private Long _seq_no;
+    private Long _primary_term;
+
+    public RawTextESDoc() { }
+
+    public String get_id() {
+        return _id;
+    }
+
+    public void set_id(String _id) {
+        this._id = _id;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public void setFound(boolean found) {
+        this.found = found;
+    }
+
+    public RawTextES get_source() {
+        return _source;
+    }
+
+    public void set_source(RawTextES _source) {
+        this._source = _source;
+    }
+
+    public Long get_seq_no() {
+        return _seq_no;
+    }
+
+    public void set_seq_no(Long _seq_no) {
+        this._seq_no = _seq_no;
+    }
+
+    public Long get_primary_term() {
+        return _primary_term;
+    }
+
+    public void set_primary_term(Long _primary_term) {
+        this._primary_term = _primary_term;
+    }
+
+    /**
+     * Returns the source of the document along with its sequence number and primary term
+     */
+    public RawTextES toEntity() {
+        return _source.setSeqNo(_seq_no).setPrimaryTerm(_primary_term);
+    }
+
+}
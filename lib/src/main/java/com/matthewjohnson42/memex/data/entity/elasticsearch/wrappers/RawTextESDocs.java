@@ -0,0 +1,19 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+import java.util.List;
+
+public class RawTextESDocs {
+
+    private List<RawTextESDoc> docs;
+
+    public RawTextESDocs() { }
+
+    public List<RawTextESDoc> getDocs() {
+        return docs;
+    }
+
+    public void setDocs(List<RawTextESDoc> docs) {
+        this.docs = docs;
+    }
+
+}
@@ -2,10 +2,13 @@ package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
 
 import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
 
+import java.util.List;
+
 public class RawTextESHit {
 
     private RawTextES _source;
     private RawTextESHighlight highlight;
+    private List<Object> sort;
 
     public RawTextESHit() { }
 
@@ -26,4 +29,12 @@ public class RawTextESHit {
         return highlight;
     }
 
+    public void setSort(List<Object> sort) {
+        this.sort = sort;
+    }
+
+    public List<Object> getSort() {
+        return sort;
+    }
+
 }
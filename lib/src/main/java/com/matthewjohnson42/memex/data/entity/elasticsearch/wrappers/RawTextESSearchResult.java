@@ -0,0 +1,144 @@
+package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
+
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import com.matthewjohnson42.memex.data.repository.SearchPage;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A raw text search response read directly into its final composite objects.
+ * Holds only the parts of the response used by the application.
+ */
+public class RawTextESSearchResult {
+
+    private long took;
+    private int failedShards;
+    private long totalHits;
+    private String totalHitsRelation = "eq";
+    private boolean totalHitsTracked;
+    private String pitId;
+    private List<RawTextESComposite> hits = new ArrayList<>();
+    private List<Object> lastSort;
+    private int status = 200;
+    private String error;
+
+    public RawTextESSearchResult() { }
+
+    public long getTook() {
+        return took;
+    }
+
+    public RawTextESSearchResult setTook(long took) {
+        this.took = took;
+        return this;
+    }
+
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public RawTextESSearchResult setFailedShards(int failedShards) {
+        this.failedShards = failedShards;
+        return this;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public RawTextESSearchResult setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+        return this;
+    }
+
+    /**
+     * @return "eq" if the total is exact, "gte" if it is a lower bound
+     */
+    public String getTotalHitsRelation() {
+        return totalHitsRelation;
+    }
+
+    public RawTextESSearchResult setTotalHitsRelation(String totalHitsRelation) {
+        this.totalHitsRelation = totalHitsRelation;
+        return this;
+    }
+
+    /**
+     * @return false if the response had no total, as for a search with track_total_hits disabled
+     */
+    public boolean isTotalHitsTracked() {
+        return totalHitsTracked;
+    }
+
+    public RawTextESSearchResult setTotalHitsTracked(boolean totalHitsTracked) {
+        this.totalHitsTracked = totalHitsTracked;
+        return this;
+    }
+
+    public String getPitId() {
+        return pitId;
+    }
+
+    public RawTextESSearchResult setPitId(String pitId) {
+        this.pitId = pitId;
+        return this;
+    }
+
+    public List<RawTextESComposite> getHits() {
+        return hits;
+    }
+
+    public RawTextESSearchResult setHits(List<RawTextESComposite> hits) {
+        this.hits = hits;
+        return this;
+    }
+
+    /**
+     * @return the sort values of the last hit, or null if there were no hits or the search was not sorted
+     */
+    public List<Object> getLastSort() {
+        return lastSort;
+    }
+
+    public RawTextESSearchResult setLastSort(List<Object> lastSort) {
+        this.lastSort = lastSort;
+        return this;
+    }
+
+    /**
+     * @return the HTTP status of the search, which differs from 200 only for a failed search of a multi search
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public RawTextESSearchResult setStatus(int status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * @return the type and reason of the error of a failed search of a multi search, otherwise null
+     */
+    public String getError() {
+        return error;
+    }
+
+    public RawTextESSearchResult setError(String error) {
+        this.error = error;
+        return this;
+    }
+
+    /**
+     * Returns the hits as a page whose total is flagged as a lower bound when the search stopped counting
+     */
+    public SearchPage<RawTextESComposite> toPage(Pageable pageable) {
+        if (!totalHitsTracked) {
+            return SearchPage.withoutTotal(hits, pageable);
+        }
+        return new SearchPage<>(hits, pageable, totalHits, "gte".equals(totalHitsRelation));
+    }
+
+}
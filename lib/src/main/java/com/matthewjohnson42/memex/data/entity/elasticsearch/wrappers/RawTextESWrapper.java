@@ -3,6 +3,7 @@ package com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers;
 public class RawTextESWrapper {
 
     private RawTextESHits hits;
+    private String pit_id;
 
     public RawTextESWrapper() { }
 
@@ -14,4 +15,12 @@ public class RawTextESWrapper {
         return hits;
     }
 
+    public void setPit_id(String pit_id) {
+        this.pit_id = pit_id;
+    }
+
+    public String getPit_id() {
+        return pit_id;
+    }
+
 }
@@ -0,0 +1,111 @@
+package com.matthewjohnson42.memex.data.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Class used to specify the structure of the Mongo document recording a pending ElasticSearch index operation.
+ * An entry is removed once the ElasticSearch index matches the Mongo collection for the entity id.
+ * A replay that fails pushes the next attempt back, an entry that fails too often is kept as a dead letter.
+ */
+@Document(collection = "indexOutbox")
+public class IndexOutboxEntry {
+
+    @Id
+    private String id;
+    private String entityName;
+    private String entityId;
+    @Indexed
+    private LocalDateTime createDateTime;
+    @Indexed
+    private LocalDateTime nextAttemptDateTime;
+    private int attempts;
+    private boolean deadLetter;
+    private String lastError;
+
+    public IndexOutboxEntry() { }
+
+    public IndexOutboxEntry(String id, String entityName, String entityId, LocalDateTime createDateTime, LocalDateTime nextAttemptDateTime) {
+        this.id = id;
+        this.entityName = entityName;
+        this.entityId = entityId;
+        this.createDateTime = createDateTime;
+        this.nextAttemptDateTime = nextAttemptDateTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public IndexOutboxEntry setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public IndexOutboxEntry setEntityName(String entityName) {
+        this.entityName = entityName;
+        return this;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public IndexOutboxEntry setEntityId(String entityId) {
+        this.entityId = entityId;
+        return this;
+    }
+
+    public LocalDateTime getCreateDateTime() {
+        return createDateTime;
+    }
+
+    public IndexOutboxEntry setCreateDateTime(LocalDateTime createDateTime) {
+        this.createDateTime = createDateTime;
+        return this;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public IndexOutboxEntry setAttempts(int attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    public LocalDateTime getNextAttemptDateTime() {
+        return nextAttemptDateTime;
+    }
+
+    public IndexOutboxEntry setNextAttemptDateTime(LocalDateTime nextAttemptDateTime) {
+        this.nextAttemptDateTime = nextAttemptDateTime;
+        return this;
+    }
+
+    public boolean isDeadLetter() {
+        return deadLetter;
+    }
+
+    public IndexOutboxEntry setDeadLetter(boolean deadLetter) {
+        this.deadLetter = deadLetter;
+        return this;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public IndexOutboxEntry setLastError(String lastError) {
+        this.lastError = lastError;
+        return this;
+    }
+
+}
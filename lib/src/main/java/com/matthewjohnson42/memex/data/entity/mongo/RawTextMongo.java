@@ -7,6 +7,11 @@ import org.springframework.data.mongodb.core.mapping.Document;
 /**
  * Class used to specify the structure of the Mongo document for the raw text entity.
  * Raw text entity is only text and DB tracking information.
+ * Large text content may be stored compressed, or in chunks outside of the document. Only one of textContent,
+ * compressedTextContent and textContentFileId is set.
+ *
+ * @see com.matthewjohnson42.memex.data.converter.TextContentCodec
+ * @see com.matthewjohnson42.memex.data.repository.mongo.RawTextContentStore
  */
 @Document(collection = "rawText")
 public class RawTextMongo extends Entity<String> {
@@ -14,6 +19,9 @@ public class RawTextMongo extends Entity<String> {
     @Id
     private String id;
     private String textContent;
+    private byte[] compressedTextContent;
+    private String textContentFileId;
+    private Long textContentLength;
 
     public RawTextMongo() { }
 
@@ -21,6 +29,9 @@ public class RawTextMongo extends Entity<String> {
         super(rawTextMongo);
         this.id = rawTextMongo.getId();
         this.textContent = rawTextMongo.getTextContent();
+        this.compressedTextContent = rawTextMongo.getCompressedTextContent();
+        this.textContentFileId = rawTextMongo.getTextContentFileId();
+        this.textContentLength = rawTextMongo.getTextContentLength();
     }
 
     @Override
@@ -42,4 +53,37 @@ public class RawTextMongo extends Entity<String> {
         return this;
     }
 
+    public byte[] getCompressedTextContent() {
+        return compressedTextContent;
+    }
+
+    public RawTextMongo setCompressedTextContent(byte[] compressedTextContent) {
+        this.compressedTextContent = compressedTextContent;
+        return this;
+    }
+
+    /**
+     * @return the id of the GridFS file holding the text content, if stored in chunks
+     */
+    public String getTextContentFileId() {
+        return textContentFileId;
+    }
+
+    public RawTextMongo setTextContentFileId(String textContentFileId) {
+        this.textContentFileId = textContentFileId;
+        return this;
+    }
+
+    /**
+     * @return the number of characters of text content stored in chunks
+     */
+    public Long getTextContentLength() {
+        return textContentLength;
+    }
+
+    public RawTextMongo setTextContentLength(Long textContentLength) {
+        this.textContentLength = textContentLength;
+        return this;
+    }
+
 }
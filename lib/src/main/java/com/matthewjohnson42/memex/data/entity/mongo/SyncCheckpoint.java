@@ -0,0 +1,55 @@
+package com.matthewjohnson42.memex.data.entity.mongo;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Class used to specify the structure of the Mongo document recording the progress of a change stream sync.
+ * The resume token is that of the last change applied to ElasticSearch, stored as extended JSON.
+ */
+@Document(collection = "syncCheckpoint")
+public class SyncCheckpoint {
+
+    @Id
+    private String id;
+    private String resumeToken;
+    private LocalDateTime updateDateTime;
+
+    public SyncCheckpoint() { }
+
+    public SyncCheckpoint(String id, String resumeToken, LocalDateTime updateDateTime) {
+        this.id = id;
+        this.resumeToken = resumeToken;
+        this.updateDateTime = updateDateTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SyncCheckpoint setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    public SyncCheckpoint setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+        return this;
+    }
+
+    public LocalDateTime getUpdateDateTime() {
+        return updateDateTime;
+    }
+
+    public SyncCheckpoint setUpdateDateTime(LocalDateTime updateDateTime) {
+        this.updateDateTime = updateDateTime;
+        return this;
+    }
+
+}
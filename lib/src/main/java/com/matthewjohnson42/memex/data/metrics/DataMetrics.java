@@ -0,0 +1,63 @@
+package com.matthewjohnson42.memex.data.metrics;
+
+/**
+ * Instrumentation of the data services and repositories. The default, {@link #NOOP}, records nothing and is used
+ * until a meter registry is available.
+ *
+ * @see MicrometerDataMetrics
+ * @see com.matthewjohnson42.memex.data.config.DataMetricsConfiguration
+ */
+public interface DataMetrics {
+
+    public static final DataMetrics NOOP = new DataMetrics() {
+
+        @Override
+        public Sample start(String component, String entityName, String operation) {
+            return Sample.NOOP;
+        }
+
+        @Override
+        public void recordBytes(String entityName, String operation, long requestBytes, long responseBytes) { }
+
+        @Override
+        public void recordSearch(String entityName, long tookMillis, int failedShards, long totalHits) { }
+
+        @Override
+        public void recordSync(String entityName, long lagMillis, int indexed, int deleted, int failed) { }
+
+    };
+
+    /**
+     * Starts timing an operation
+     *
+     * @param component the layer performing the operation, such as "service" or "elasticsearch"
+     * @param operation the name of the operation, such as "getById" or "_search"
+     */
+    public Sample start(String component, String entityName, String operation);
+
+    public void recordBytes(String entityName, String operation, long requestBytes, long responseBytes);
+
+    /**
+     * Records the server side statistics reported in an ElasticSearch search response
+     */
+    public void recordSearch(String entityName, long tookMillis, int failedShards, long totalHits);
+
+    /**
+     * Records a batch of changes applied to ElasticSearch by a change stream sync
+     *
+     * @param lagMillis time from the Mongo write of the last change in the batch until it was indexed
+     */
+    public void recordSync(String entityName, long lagMillis, int indexed, int deleted, int failed);
+
+    public interface Sample {
+
+        public static final Sample NOOP = outcome -> { };
+
+        /**
+         * @param outcome "success", an HTTP status code, or the simple class name of the exception that ended the operation
+         */
+        public void stop(String outcome);
+
+    }
+
+}
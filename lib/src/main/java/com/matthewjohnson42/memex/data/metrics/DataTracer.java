@@ -0,0 +1,21 @@
+package com.matthewjohnson42.memex.data.metrics;
+
+/**
+ * Creates trace spans around data operations. Applications using a tracing library provide an implementation as a
+ * bean, adapting it to their tracer; spans are only created when such a bean and a meter registry are present.
+ *
+ * @see MicrometerDataMetrics
+ */
+public interface DataTracer {
+
+    public Span start(String name, String entityName);
+
+    public interface Span {
+
+        public void tag(String key, String value);
+
+        public void end();
+
+    }
+
+}
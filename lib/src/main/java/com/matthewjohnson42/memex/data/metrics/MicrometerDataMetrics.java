@@ -0,0 +1,105 @@
+package com.matthewjohnson42.memex.data.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records data operations to a Micrometer registry. Meters:
+ * <ul>
+ *     <li>memex.data.service, memex.data.elasticsearch: timers tagged by entity, operation and outcome</li>
+ *     <li>memex.data.elasticsearch.request.size, memex.data.elasticsearch.response.size: bytes per request</li>
+ *     <li>memex.data.elasticsearch.search.took: search time reported by ElasticSearch</li>
+ *     <li>memex.data.elasticsearch.search.shard.failures: shards that failed to return results for a search</li>
+ *     <li>memex.data.elasticsearch.search.hits: total hits reported per search</li>
+ *     <li>memex.data.sync.lag: time from a Mongo write until the change stream sync indexed it</li>
+ *     <li>memex.data.sync.changes: changes applied by the change stream sync, tagged by action</li>
+ * </ul>
+ * Mongo commands are timed by the driver's command listener, see the Mongo configurations.
+ */
+public class MicrometerDataMetrics implements DataMetrics {
+
+    private final MeterRegistry registry;
+    private final DataTracer tracer;
+
+    public MicrometerDataMetrics(MeterRegistry registry, DataTracer tracer) {
+        this.registry = registry;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Sample start(String component, String entityName, String operation) {
+        Timer.Sample timerSample = Timer.start(registry);
+        DataTracer.Span span = tracer == null ? null : tracer.start("memex.data." + component + " " + operation, entityName);
+        return outcome -> {
+            timerSample.stop(Timer.builder("memex.data." + component)
+                    .tag("entity", entityName)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(registry));
+            if (span != null) {
+                span.tag("outcome", outcome);
+                span.end();
+            }
+        };
+    }
+
+    @Override
+    public void recordBytes(String entityName, String operation, long requestBytes, long responseBytes) {
+        DistributionSummary.builder("memex.data.elasticsearch.request.size")
+                .baseUnit("bytes")
+                .tag("entity", entityName)
+                .tag("operation", operation)
+                .register(registry)
+                .record(requestBytes);
+        DistributionSummary.builder("memex.data.elasticsearch.response.size")
+                .baseUnit("bytes")
+                .tag("entity", entityName)
+                .tag("operation", operation)
+                .register(registry)
+                .record(responseBytes);
+    }
+
+    @Override
+    public void recordSearch(String entityName, long tookMillis, int failedShards, long totalHits) {
+        Timer.builder("memex.data.elasticsearch.search.took")
+                .tag("entity", entityName)
+                .register(registry)
+                .record(tookMillis, TimeUnit.MILLISECONDS);
+        if (failedShards > 0) {
+            Counter.builder("memex.data.elasticsearch.search.shard.failures")
+                    .tag("entity", entityName)
+                    .register(registry)
+                    .increment(failedShards);
+        }
+        DistributionSummary.builder("memex.data.elasticsearch.search.hits")
+                .tag("entity", entityName)
+                .register(registry)
+                .record(totalHits);
+    }
+
+    @Override
+    public void recordSync(String entityName, long lagMillis, int indexed, int deleted, int failed) {
+        Timer.builder("memex.data.sync.lag")
+                .tag("entity", entityName)
+                .register(registry)
+                .record(lagMillis, TimeUnit.MILLISECONDS);
+        countSyncChanges(entityName, "index", indexed);
+        countSyncChanges(entityName, "delete", deleted);
+        countSyncChanges(entityName, "failed", failed);
+    }
+
+    private void countSyncChanges(String entityName, String action, int count) {
+        if (count > 0) {
+            Counter.builder("memex.data.sync.changes")
+                    .tag("entity", entityName)
+                    .tag("action", action)
+                    .register(registry)
+                    .increment(count);
+        }
+    }
+
+}
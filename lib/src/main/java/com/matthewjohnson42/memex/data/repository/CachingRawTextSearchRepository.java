@@ -0,0 +1,233 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Caches search result pages in front of another {@link RawTextSearchRepository}.
+ * Pages are keyed on the write generation of the underlying repository and the normalized search parameters, so any
+ * write to the index in this process, whether through this repository or through the services, processors and sync
+ * workers that use the underlying repository directly, makes every earlier page unreachable, and the stale pages age
+ * out of the cache. Writes by other processes are only seen once pages expire. Searches made within the settle time
+ * of a write are not cached, as the search index may not yet show the write.
+ * Reads and writes by id are passed to the underlying repository uncached, as most writes to the index do not go
+ * through this repository.
+ *
+ * @see com.matthewjohnson42.memex.data.config.SearchCacheConfiguration
+ */
+public class CachingRawTextSearchRepository implements RawTextSearchRepository {
+
+    // each result is weighed as this many characters in addition to its text and highlights
+    private static final int RESULT_OVERHEAD = 128;
+
+    private final RawTextSearchRepository delegate;
+    private final Cache<SearchKey, Page<RawTextESComposite>> searchCache;
+    private final long settleNanos;
+
+    /**
+     * @param maxWeight the maximum total characters of the text and highlights of cached results
+     * @param settle    the time after a write during which searches are not cached, such as the index refresh interval
+     */
+    public CachingRawTextSearchRepository(RawTextSearchRepository delegate,
+                                          int maxEntries,
+                                          long maxWeight,
+                                          Duration expireAfter,
+                                          Duration settle) {
+        this.delegate = delegate;
+        this.settleNanos = settle.toNanos();
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeight / Math.max(1, maxEntries)));
+        this.searchCache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((SearchKey key, Page<RawTextESComposite> page) -> Math.max(minWeight, weigh(page)))
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public RawTextES save(RawTextES e) {
+        return delegate.save(e);
+    }
+
+    @Override
+    public Optional<RawTextES> findById(String id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return delegate.existsById(id);
+    }
+
+    @Override
+    public Optional<RawTextES> findMetadataById(String id) {
+        return delegate.findMetadataById(id);
+    }
+
+    @Override
+    public Optional<RawTextES> patch(String id, RawTextES changes, Long expectedVersion) {
+        return delegate.patch(id, changes, expectedVersion);
+    }
+
+    @Override
+    public <S extends RawTextES> List<S> saveAll(Iterable<S> entities) {
+        return delegate.saveAll(entities);
+    }
+
+    @Override
+    public Iterable<RawTextES> findAllById(Iterable<String> ids) {
+        return delegate.findAllById(ids);
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        delegate.deleteAllById(ids);
+    }
+
+    @Override
+    public Stream<RawTextES> streamAll(int batchSize, String afterId) {
+        return delegate.streamAll(batchSize, afterId);
+    }
+
+    @Override
+    public Page<RawTextESComposite> getPageFromSearchString(String searchString,
+                                                           LocalDateTime startCreateDate,
+                                                           LocalDateTime endCreateDate,
+                                                           LocalDateTime startUpdateDate,
+                                                           LocalDateTime endUpdateDate,
+                                                           Pageable pageable) {
+        WriteGeneration writeGeneration = delegate.getWriteGeneration();
+        if (searchString == null || writeGeneration.getNanosSinceLastWrite() < settleNanos) {
+            return delegate.getPageFromSearchString(searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate, pageable);
+        }
+        SearchKey key = new SearchKey(writeGeneration.get(), searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate, pageable);
+        Page<RawTextESComposite> page = searchCache.get(key, k -> delegate.getPageFromSearchString(
+                searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate, pageable));
+        return copy(page);
+    }
+
+    @Override
+    public WriteGeneration getWriteGeneration() {
+        return delegate.getWriteGeneration();
+    }
+
+    public void invalidateSearches() {
+        searchCache.invalidateAll();
+    }
+
+    /**
+     * Returns the hit, miss, load and eviction counts of the search cache
+     */
+    public CacheStats getSearchStats() {
+        return searchCache.stats();
+    }
+
+    private static Page<RawTextESComposite> copy(Page<RawTextESComposite> page) {
+        List<RawTextESComposite> results = new ArrayList<>(page.getNumberOfElements());
+        for (RawTextESComposite result : page.getContent()) {
+            RawTextESComposite copy = new RawTextESComposite(result);
+            copy.setHighlights(result.getHighlights() == null ? null : new ArrayList<>(result.getHighlights()));
+            results.add(copy);
+        }
+        boolean totalLowerBound = page instanceof SearchPage && ((SearchPage<RawTextESComposite>) page).isTotalLowerBound();
+        return new SearchPage<>(results, page.getPageable(), page.getTotalElements(), totalLowerBound);
+    }
+
+    private static int weigh(Page<RawTextESComposite> page) {
+        long weight = 0;
+        for (RawTextESComposite result : page.getContent()) {
+            weight += RESULT_OVERHEAD + length(result.getTextContent());
+            if (result.getHighlights() != null) {
+                for (String highlight : result.getHighlights()) {
+                    weight += length(highlight);
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Search parameters with the search string trimmed, lower cased and with whitespace collapsed, matching how the
+     * search string is analyzed
+     */
+    private static final class SearchKey {
+
+        private final long generation;
+        private final String searchString;
+        private final LocalDateTime startCreateDate;
+        private final LocalDateTime endCreateDate;
+        private final LocalDateTime startUpdateDate;
+        private final LocalDateTime endUpdateDate;
+        private final long offset;
+        private final int size;
+        private final int hashCode;
+
+        private SearchKey(long generation,
+                          String searchString,
+                          LocalDateTime startCreateDate,
+                          LocalDateTime endCreateDate,
+                          LocalDateTime startUpdateDate,
+                          LocalDateTime endUpdateDate,
+                          Pageable pageable) {
+            this.generation = generation;
+            this.searchString = searchString.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            this.startCreateDate = startCreateDate;
+            this.endCreateDate = endCreateDate;
+            this.startUpdateDate = startUpdateDate;
+            this.endUpdateDate = endUpdateDate;
+            this.offset = pageable.isPaged() ? pageable.getOffset() : -1;
+            this.size = pageable.isPaged() ? pageable.getPageSize() : -1;
+            this.hashCode = Objects.hash(generation, this.searchString, startCreateDate, endCreateDate,
+                    startUpdateDate, endUpdateDate, offset, size);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SearchKey)) {
+                return false;
+            }
+            SearchKey key = (SearchKey) o;
+            return generation == key.generation
+                    && offset == key.offset
+                    && size == key.size
+                    && searchString.equals(key.searchString)
+                    && Objects.equals(startCreateDate, key.startCreateDate)
+                    && Objects.equals(endCreateDate, key.endCreateDate)
+                    && Objects.equals(startUpdateDate, key.startUpdateDate)
+                    && Objects.equals(endUpdateDate, key.endUpdateDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.matthewjohnson42.memex.data.entity.Entity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache in front of another {@link Repository}.
+ * Entries are bounded by count and by total weight, and expire a fixed time after they are loaded. Concurrent misses
+ * for one id share a single load from the underlying repository. Writes through this repository invalidate the
+ * affected ids once the underlying write has completed; writes made directly against the underlying repository are
+ * only picked up after expiry.
+ * Cached entities are copied on the way out, callers may modify the entities they receive.
+ *
+ * @param <T>  the entity type being stored
+ * @param <ID> the id type of the entity type specified by <T>
+ * @see com.matthewjohnson42.memex.data.config.RepositoryCacheConfiguration
+ */
+public class CachingRepository<T extends Entity<ID>, ID> implements Repository<T, ID> {
+
+    private final Repository<T, ID> delegate;
+    private final UnaryOperator<T> copier;
+    private final Cache<ID, T> cache;
+
+    /**
+     * @param copier      returns a copy of an entity, typically its copy constructor
+     * @param weigher     returns the weight of an entity, such as the length of its text content
+     * @param maxEntries  the maximum number of cached entities
+     * @param maxWeight   the maximum total weight of the cached entities
+     * @param expireAfter the time after loading at which an entity is evicted
+     */
+    public CachingRepository(Repository<T, ID> delegate,
+                             UnaryOperator<T> copier,
+                             ToIntFunction<T> weigher,
+                             int maxEntries,
+                             long maxWeight,
+                             Duration expireAfter) {
+        this.delegate = delegate;
+        this.copier = copier;
+        // Caffeine bounds either count or weight, giving each entity a minimum weight of maxWeight / maxEntries bounds both
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxWeight / Math.max(1, maxEntries)));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((ID id, T entity) -> Math.max(minWeight, weigher.applyAsInt(entity)))
+                .expireAfterWrite(expireAfter)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public T save(T e) {
+        T saved = delegate.save(e);
+        cache.invalidate(saved.getId());
+        return saved;
+    }
+
+    @Override
+    public Optional<T> findById(ID id) {
+        T entity = cache.get(id, key -> delegate.findById(key).orElse(null));
+        return Optional.ofNullable(entity).map(copier);
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        return cache.asMap().containsKey(id) || delegate.existsById(id);
+    }
+
+    /**
+     * Reads from the underlying repository, which reads less than a full entity on a miss
+     */
+    @Override
+    public Optional<T> findMetadataById(ID id) {
+        return delegate.findMetadataById(id);
+    }
+
+    @Override
+    public Optional<T> patch(ID id, T changes, Long expectedVersion) {
+        try {
+            return delegate.patch(id, changes, expectedVersion);
+        } finally {
+            // also invalidated on conflict, the cached entity is likely the stale one the caller read
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public void deleteById(ID id) {
+        delegate.deleteById(id);
+        cache.invalidate(id);
+    }
+
+    @Override
+    public <S extends T> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = delegate.saveAll(entities);
+        List<ID> ids = new ArrayList<>(saved.size());
+        for (S entity : saved) {
+            ids.add(entity.getId());
+        }
+        cache.invalidateAll(ids);
+        return saved;
+    }
+
+    @Override
+    public Iterable<T> findAllById(Iterable<ID> ids) {
+        Map<ID, T> found = cache.getAll(ids, missing -> {
+            List<ID> missingIds = new ArrayList<>();
+            missing.forEach(missingIds::add);
+            Map<ID, T> loaded = new HashMap<>();
+            for (T entity : delegate.findAllById(missingIds)) {
+                loaded.put(entity.getId(), entity);
+            }
+            return loaded;
+        });
+        List<T> entities = new ArrayList<>(found.size());
+        for (T entity : found.values()) {
+            entities.add(copier.apply(entity));
+        }
+        return entities;
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends ID> ids) {
+        delegate.deleteAllById(ids);
+        cache.invalidateAll(ids);
+    }
+
+    /**
+     * Streams from the underlying repository without populating the cache
+     */
+    @Override
+    public Stream<T> streamAll(int batchSize, ID afterId) {
+        return delegate.streamAll(batchSize, afterId);
+    }
+
+    public void invalidate(ID id) {
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the hit, miss, load and eviction counts of the cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getEstimatedSize() {
+        return cache.estimatedSize();
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import java.util.List;
+
+/**
+ * A page of results read through a cursor rather than an offset. Each page costs the same to read regardless of how
+ * deep into the results it is. The next page is requested with {@link #getNextCursor()}, which is opaque to callers.
+ *
+ * @param <T> the type of the page content
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public CursorPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return the cursor of the following page, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * The number of documents with a date in the interval starting at the bucket key
+ */
+public class DateHistogramBucket {
+
+    private final LocalDateTime start;
+    private final long count;
+
+    public DateHistogramBucket(LocalDateTime start, long count) {
+        this.start = start;
+        this.count = count;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+}
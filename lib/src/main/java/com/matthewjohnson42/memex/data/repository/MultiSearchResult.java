@@ -0,0 +1,51 @@
+package com.matthewjohnson42.memex.data.repository;
+
+/**
+ * The outcome of one search of a multi search, either a page of results or the error of that search alone
+ */
+public class MultiSearchResult<T> {
+
+    private final SearchPage<T> page;
+    private final int status;
+    private final String error;
+
+    private MultiSearchResult(SearchPage<T> page, int status, String error) {
+        this.page = page;
+        this.status = status;
+        this.error = error;
+    }
+
+    public static <T> MultiSearchResult<T> success(SearchPage<T> page) {
+        return new MultiSearchResult<>(page, 200, null);
+    }
+
+    public static <T> MultiSearchResult<T> failure(int status, String error) {
+        return new MultiSearchResult<>(null, status, error);
+    }
+
+    /**
+     * @return the page of results, or null if the search failed
+     */
+    public SearchPage<T> getPage() {
+        return page;
+    }
+
+    /**
+     * @return the HTTP status of the search
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the type and reason of the error, or null if the search succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+}
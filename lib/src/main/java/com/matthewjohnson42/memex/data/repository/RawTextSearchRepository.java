@@ -0,0 +1,37 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Full text search over raw text. Implemented by the ElasticSearch rest template and by the embedded Lucene
+ * repository, which are selected by profile.
+ *
+ * @see com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESRestTemplate
+ * @see com.matthewjohnson42.memex.data.repository.lucene.RawTextLuceneRepository
+ */
+public interface RawTextSearchRepository extends Repository<RawTextES, String> {
+
+    /**
+     * Returns a page of the raw text matching the search string with a fuzziness of 1, sorted by create date,
+     * most recent first. Each result holds up to 3 highlighted fragments of its text content.
+     * Null date bounds are not applied. The total may be a lower bound, as reported by {@link SearchPage}.
+     */
+    public Page<RawTextESComposite> getPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            Pageable pageable);
+
+    /**
+     * @return the counter of every write to the underlying index, whichever service, processor or sync worker makes it
+     */
+    public WriteGeneration getWriteGeneration();
+
+}
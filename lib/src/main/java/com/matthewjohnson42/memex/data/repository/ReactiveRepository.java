@@ -0,0 +1,41 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import com.matthewjohnson42.memex.data.entity.Entity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link Repository}, spanning Mongo and ES data stores.
+ * Signatures match those of Spring Data's ReactiveCrudRepository so that reactive Mongo repositories inherit them.
+ *
+ * @param <T>  the entity type being stored
+ * @param <ID> the id type of the entity type specified by <T>
+ * @see Repository
+ * @see com.matthewjohnson42.memex.data.service.ReactiveDataService
+ */
+public interface ReactiveRepository<T extends Entity, ID> {
+
+    public <S extends T> Mono<S> save(S e);
+
+    public Mono<T> findById(ID id);
+
+    /**
+     * Checks for the entity without reading it from the data store
+     */
+    public Mono<Boolean> existsById(ID id);
+
+    public Mono<Void> deleteById(ID id);
+
+    /**
+     * Non-blocking counterpart of {@link Repository#patch(Object, Entity, Long)}. Emits the entity as stored after the
+     * update, completes empty if no entity is stored for the id, and errors with an
+     * {@link org.springframework.dao.OptimisticLockingFailureException} if the stored entity is no longer at the
+     * expected version.
+     */
+    public Mono<T> patch(ID id, T changes, Long expectedVersion);
+
+    public <S extends T> Flux<S> saveAll(Iterable<S> entities);
+
+    public Flux<T> findAllById(Iterable<ID> ids);
+
+}
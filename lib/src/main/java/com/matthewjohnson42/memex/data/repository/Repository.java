@@ -2,10 +2,13 @@ package com.matthewjohnson42.memex.data.repository;
 
 import com.matthewjohnson42.memex.data.entity.Entity;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
- * Implementation of a generic Repository, spanning Mongo and ES data stores
+ * Implementation of a generic Repository, spanning Mongo and ES data stores.
+ * Batch signatures match those of Spring Data's CrudRepository so that Mongo repositories inherit them.
  *
  * @param <T>  the entity type being stored
  * @param <ID> the id type of the entity type specified by <T>
@@ -22,4 +25,39 @@ public interface Repository<T extends Entity, ID> {
 
     public void deleteById(ID id);
 
+    public boolean existsById(ID id);
+
+    /**
+     * Returns the entity without its content fields, such as the text content of a raw text entity.
+     * Used when only ids and timestamps are needed, to avoid reading the content from the data store.
+     */
+    public Optional<T> findMetadataById(ID id);
+
+    /**
+     * Applies the non-null fields of the given changes to the stored entity in a single request, without reading or
+     * rewriting the rest of the entity, and increments its version.
+     *
+     * @param expectedVersion the version the caller last read, or null to apply the changes regardless of version
+     * @return the entity as stored after the update, or an empty Optional if no entity is stored for the id
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the stored entity is no longer at the expected version
+     */
+    public Optional<T> patch(ID id, T changes, Long expectedVersion);
+
+    public <S extends T> List<S> saveAll(Iterable<S> entities);
+
+    /**
+     * Returns the entities found for the given ids. Ids with no stored entity are omitted.
+     */
+    public Iterable<T> findAllById(Iterable<ID> ids);
+
+    public void deleteAllById(Iterable<? extends ID> ids);
+
+    /**
+     * Streams all stored entities in id order, reading them from the data store in batches of the given size.
+     * The stream must be closed to release the underlying cursor.
+     *
+     * @param afterId the id of the last entity already read, used to resume an interrupted read, or null to start from the first entity
+     */
+    public Stream<T> streamAll(int batchSize, ID afterId);
+
 }
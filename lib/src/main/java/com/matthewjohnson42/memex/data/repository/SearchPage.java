@@ -0,0 +1,38 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * A page of search results whose total may be a lower bound. Counting every match of a broad search can cost more
+ * than finding the page, so a search may stop counting at a threshold and report that at least that many match.
+ */
+public class SearchPage<T> extends PageImpl<T> {
+
+    private final boolean totalLowerBound;
+
+    public SearchPage(List<T> content, Pageable pageable, long total, boolean totalLowerBound) {
+        super(content, pageable, total);
+        this.totalLowerBound = totalLowerBound;
+    }
+
+    /**
+     * Returns a page of a search that did not count its matches. A full page reports one more result than it holds,
+     * so that a following page is expected, and a partial page reports the exact total.
+     */
+    public static <T> SearchPage<T> withoutTotal(List<T> content, Pageable pageable) {
+        boolean full = pageable.isPaged() && content.size() >= pageable.getPageSize();
+        long total = (pageable.isPaged() ? pageable.getOffset() : 0) + content.size() + (full ? 1 : 0);
+        return new SearchPage<>(content, pageable, total, full);
+    }
+
+    /**
+     * @return true if at least {@link #getTotalElements()} results match, false if that is the exact total
+     */
+    public boolean isTotalLowerBound() {
+        return totalLowerBound;
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.matthewjohnson42.memex.data.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the writes made to a repository, for caches of results derived from it such as searches.
+ * A cache keyed on the generation does not return results read before a later write.
+ *
+ * @see CachingRawTextSearchRepository
+ */
+public class WriteGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long lastWriteNanos = System.nanoTime();
+
+    public void written() {
+        lastWriteNanos = System.nanoTime();
+        generation.incrementAndGet();
+    }
+
+    public long get() {
+        return generation.get();
+    }
+
+    public long getNanosSinceLastWrite() {
+        return System.nanoTime() - lastWriteNanos;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+
+/**
+ * Builds the newline delimited action entries of an ElasticSearch _bulk request body
+ */
+final class ElasticBulkEntries {
+
+    private ElasticBulkEntries() { }
+
+    static byte[] index(ObjectMapper objectMapper, Object id, Object source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            objectMapper.writeValue(out, Collections.singletonMap("index", Collections.singletonMap("_id", id)));
+            out.write('\n');
+            objectMapper.writeValue(out, source);
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] delete(ObjectMapper objectMapper, Object id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            objectMapper.writeValue(out, Collections.singletonMap("delete", Collections.singletonMap("_id", id)));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+}
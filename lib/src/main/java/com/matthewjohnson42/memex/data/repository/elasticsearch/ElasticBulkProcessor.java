@@ -0,0 +1,347 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.matthewjohnson42.memex.data.entity.Entity;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkItem;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers index and delete operations against an ElasticSearch index and submits them through the _bulk API.
+ * Buffered operations are flushed when the action count, byte size or flush interval limit is reached. At most
+ * the configured number of bulk requests are in flight at once, callers block when that limit is reached.
+ * Items rejected with a retryable status (429, 5xx) are resubmitted alone with exponential backoff. The ids of items
+ * that finally failed are kept, so that callers can index them again later.
+ *
+ * @param <ID> the type of the id of the entity
+ * @param <E>  the type corresponding to the ES index
+ * @see ElasticRestTemplate#newBulkProcessor()
+ */
+public class ElasticBulkProcessor<ID, E extends Entity<ID>> implements Closeable {
+
+    public static final String REFRESH_INTERVAL = "index.refresh_interval";
+    public static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ElasticRestTemplate<ID, E> template;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxRetries;
+    private final long backoffMillis;
+
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Set<ID> failedIds = ConcurrentHashMap.newKeySet();
+    // batches taken from the buffer whose requests, including retries, have not completed
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+    private final Object completion = new Object();
+
+    private List<BulkItem> buffer = new ArrayList<>();
+    private long bufferBytes = 0;
+    private Map<String, String> settingsBeforeLoad;
+    private volatile boolean closed = false;
+
+    public ElasticBulkProcessor(ElasticRestTemplate<ID, E> template,
+                                int maxActions,
+                                long maxBytes,
+                                long flushIntervalMillis,
+                                int maxConcurrentRequests,
+                                int maxRetries,
+                                long backoffMillis) {
+        this.template = template;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.inFlight = new Semaphore(maxConcurrentRequests);
+        this.executor = Executors.newFixedThreadPool(maxConcurrentRequests, daemonThreads("bulk"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("bulk-flush"));
+        if (flushIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void index(E entity) {
+        add(new BulkItem(entity.getId(), template.bulkIndexEntry(entity)));
+    }
+
+    public void delete(ID id) {
+        add(new BulkItem(id, template.bulkDeleteEntry(id)));
+    }
+
+    /**
+     * Submits all buffered operations without waiting for their completion.
+     * Blocks while the maximum number of requests is in flight, without holding up callers adding operations.
+     */
+    public void flush() {
+        List<BulkItem> items;
+        synchronized (this) {
+            items = takeBuffer();
+        }
+        submit(items);
+    }
+
+    /**
+     * Submits all buffered operations and waits until every in flight request, including retries, has completed
+     */
+    public void awaitFlush() {
+        flush();
+        boolean interrupted = false;
+        synchronized (completion) {
+            while (pendingBatches.get() > 0) {
+                try {
+                    completion.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Disables refresh and replication on the index for the duration of a large load.
+     * The previous settings are restored by {@link #endBulkLoad()}.
+     */
+    public synchronized void beginBulkLoad() {
+        beginBulkLoad("-1", 0);
+    }
+
+    public synchronized void beginBulkLoad(String refreshInterval, int numberOfReplicas) {
+        if (settingsBeforeLoad == null) {
+            settingsBeforeLoad = template.getIndexSettings(REFRESH_INTERVAL, NUMBER_OF_REPLICAS);
+        }
+        Map<String, Object> loadSettings = new HashMap<>();
+        loadSettings.put(REFRESH_INTERVAL, refreshInterval);
+        loadSettings.put(NUMBER_OF_REPLICAS, numberOfReplicas);
+        template.updateIndexSettings(loadSettings);
+    }
+
+    public void endBulkLoad() {
+        awaitFlush();
+        synchronized (this) {
+            if (settingsBeforeLoad != null) {
+                template.updateIndexSettings(settingsBeforeLoad);
+                settingsBeforeLoad = null;
+                template.refreshIndex();
+            }
+        }
+    }
+
+    public long getSucceededCount() {
+        return succeeded.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the ids of the operations that failed, after retries where the failure was retryable
+     */
+    public Set<ID> getFailedIds() {
+        return new HashSet<>(failedIds);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        scheduler.shutdown();
+        if (settingsBeforeLoad != null) {
+            endBulkLoad();
+        } else {
+            awaitFlush();
+        }
+        executor.shutdown();
+    }
+
+    private void add(BulkItem item) {
+        List<BulkItem> items = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Bulk processor for index '" + template.entityName + "' is closed");
+            }
+            buffer.add(item);
+            bufferBytes += item.bytes.length;
+            if (buffer.size() >= maxActions || bufferBytes >= maxBytes) {
+                items = takeBuffer();
+            }
+        }
+        submit(items);
+    }
+
+    // called holding the monitor, the batch counts as pending from here so that awaitFlush waits for it
+    private List<BulkItem> takeBuffer() {
+        if (buffer.isEmpty()) {
+            return null;
+        }
+        List<BulkItem> items = buffer;
+        buffer = new ArrayList<>();
+        bufferBytes = 0;
+        pendingBatches.incrementAndGet();
+        return items;
+    }
+
+    private void submit(List<BulkItem> items) {
+        if (items == null) {
+            return;
+        }
+        inFlight.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                try {
+                    send(items);
+                } finally {
+                    inFlight.release();
+                    completeBatch();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            fail(items);
+            completeBatch();
+            throw e;
+        }
+    }
+
+    private void completeBatch() {
+        if (pendingBatches.decrementAndGet() == 0) {
+            synchronized (completion) {
+                completion.notifyAll();
+            }
+        }
+    }
+
+    private void fail(List<BulkItem> items) {
+        failed.addAndGet(items.size());
+        for (BulkItem item : items) {
+            failedIds.add(item.id);
+        }
+    }
+
+    private void send(List<BulkItem> items) {
+        List<BulkItem> pending = items;
+        long backoff = backoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            List<BulkItem> retry;
+            try {
+                retry = retryableItems(pending, template.bulk(toBody(pending)));
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                    logger.error("Bulk request of {} actions on index '{}' was rejected", pending.size(), template.entityName, e);
+                    fail(pending);
+                    return;
+                }
+                retry = pending;
+            } catch (RestClientException e) {
+                logger.warn("Bulk request of {} actions on index '{}' failed", pending.size(), template.entityName, e);
+                retry = pending;
+            }
+            if (retry.isEmpty()) {
+                return;
+            }
+            if (attempt >= maxRetries) {
+                logger.error("Giving up on {} bulk actions on index '{}' after {} retries", retry.size(), template.entityName, maxRetries);
+                fail(retry);
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(retry);
+                return;
+            }
+            backoff *= 2;
+            pending = retry;
+        }
+    }
+
+    private List<BulkItem> retryableItems(List<BulkItem> items, ESBulkResponse response) {
+        if (!response.isErrors()) {
+            succeeded.addAndGet(items.size());
+            return new ArrayList<>();
+        }
+        List<BulkItem> retry = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            ESBulkItem result = response.getItem(i);
+            if (result.getError() == null) {
+                succeeded.incrementAndGet();
+            } else if (result.getStatus() == HttpStatus.TOO_MANY_REQUESTS.value() || result.getStatus() >= 500) {
+                retry.add(items.get(i));
+            } else {
+                logger.error("Bulk action for id {} on index '{}' failed: {}", items.get(i).id, template.entityName, result.getError());
+                fail(Collections.singletonList(items.get(i)));
+            }
+        }
+        return retry;
+    }
+
+    private byte[] toBody(List<BulkItem> items) {
+        int size = 0;
+        for (BulkItem item : items) {
+            size += item.bytes.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (BulkItem item : items) {
+            out.write(item.bytes, 0, item.bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private ThreadFactory daemonThreads(String name) {
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, template.entityName + "-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class BulkItem {
+
+        private final ID id;
+        private final byte[] bytes;
+
+        private BulkItem(ID id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
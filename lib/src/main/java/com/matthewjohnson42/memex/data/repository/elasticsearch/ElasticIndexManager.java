@@ -0,0 +1,461 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.matthewjohnson42.memex.data.config.AbstractElasticConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages the versioned physical indices behind the alias used by an {@link ElasticRestTemplate}.
+ * Each physical index is named after the alias and a hash of its create index command, and records that hash in the
+ * _meta of its mapping. When the command changes, a new index is created and filled with _reindex in the background
+ * while the alias keeps serving reads and writes from the current index. The ids of documents written or deleted
+ * through the template, or a web client sharing this manager, while the copy runs are tracked, and those documents
+ * are copied again, or deleted from the new index, in catch-up passes until few remain. Writes to the current index
+ * are then blocked, writes already in flight are awaited, and a final catch-up pass runs before the alias is moved to
+ * the new index in a single _aliases request, so no write made through this manager is lost. Writes rejected by the
+ * block fail with ElasticSearch status 403 and are left to the caller, such as the outbox drainer. Writes made to the
+ * index by other clients are not tracked.
+ * An index created before versioning, named like the alias, is migrated the same way. It has to be removed for the
+ * alias to take its name, so unless previous indices are deleted it is first cloned to {@code <alias>_unversioned}.
+ *
+ * @see ElasticRestTemplate#initIndex()
+ */
+public class ElasticIndexManager {
+
+    public static final String MAPPING_HASH = "mapping_hash";
+
+    // catch-up passes run with writes allowed until one copies at most this many documents
+    private static final long CATCH_UP_THRESHOLD = 1000;
+    private static final int MAX_CATCH_UP_PASSES = 5;
+    private static final int CATCH_UP_IDS_PER_REQUEST = 1000;
+    private static final long WRITES_IN_FLIGHT_POLL_MILLIS = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ElasticRestTemplate<?, ?> template;
+    private final String alias;
+    private final String hostUrl;
+    private final ObjectNode createIndex;
+    private final String mappingHash;
+    private final String indexName;
+    private final boolean reindexOnChange;
+    private final boolean deletePrevious;
+    private final long pollMillis;
+
+    private volatile Thread migration;
+
+    // ids written while a migration runs, mapped to a sequence number of their last write
+    private volatile boolean tracking;
+    private final Map<String, Long> written = new ConcurrentHashMap<>();
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final Set<Long> writesInFlight = ConcurrentHashMap.newKeySet();
+
+    public ElasticIndexManager(ElasticRestTemplate<?, ?> template, AbstractElasticConfiguration config) {
+        this.template = template;
+        this.alias = template.entityName;
+        this.hostUrl = template.hostUrl;
+        try {
+            this.createIndex = (ObjectNode) template.objectMapper.readTree(template.createIndexCommand);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("Create index command for '%s' is not valid JSON", alias), e);
+        }
+        this.mappingHash = hash(createIndex.toString());
+        this.indexName = alias + "_" + mappingHash;
+        this.reindexOnChange = config.isIndexReindexOnChange();
+        this.deletePrevious = config.isIndexDeletePrevious();
+        this.pollMillis = config.getIndexReindexPollMillis();
+    }
+
+    /**
+     * @return the name of the physical index for the current create index command
+     */
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public boolean isMigrating() {
+        Thread thread = migration;
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Creates the index and alias if missing, or starts a background migration if the mapping has changed
+     */
+    public void ensureIndex() {
+        logger.info("Checking for existing ElasticSearch index '{}'", alias);
+        String current = currentIndex();
+        if (current == null) {
+            if (exists(alias)) {
+                logger.info("Found unversioned ElasticSearch index '{}', migrating it to '{}'", alias, indexName);
+                migrate(alias, true);
+            } else {
+                create(indexName, true);
+                logger.info("Created ElasticSearch index '{}' with alias '{}'", indexName, alias);
+            }
+        } else if (mappingHash.equals(mappingHashOf(current))) {
+            logger.info("Found ElasticSearch index '{}' with alias '{}' and current mapping", current, alias);
+        } else if (!reindexOnChange) {
+            logger.warn("Mapping of ElasticSearch index '{}' differs from the create index command, reindexing is disabled", current);
+        } else {
+            logger.info("Mapping of ElasticSearch index '{}' has changed, migrating alias '{}' to '{}'", current, alias, indexName);
+            migrate(current, false);
+        }
+    }
+
+    /**
+     * @return the field to sort on for id order, the id field if mapped as a keyword, otherwise its keyword subfield
+     */
+    public String resolveIdSortField() {
+        JsonNode mapping = fieldMapping("id");
+        if (mapping == null) {
+            return "id.keyword";
+        }
+        return "keyword".equals(mapping.path("type").asText()) ? "id" : "id.keyword";
+    }
+
+    /**
+     * @return the mapping of a top level field in the index behind the alias, or null if it cannot be read
+     */
+    public JsonNode fieldMapping(String field) {
+        try {
+            JsonNode response = template.getForObject(hostUrl + "/{alias}/_mapping/field/{field}", JsonNode.class, alias, field);
+            Iterator<JsonNode> indices = response.elements();
+            if (indices.hasNext()) {
+                JsonNode mapping = indices.next().path("mappings").path(field).path("mapping").path(field);
+                return mapping.isMissingNode() ? null : mapping;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the mapping of the {} field of ElasticSearch index '{}'", field, alias, e);
+        }
+        return null;
+    }
+
+    /**
+     * Marks the start of a write through the alias, to be followed by {@link #finishWrite} or {@link #finishBulkWrite}
+     *
+     * @return the ticket of the write
+     */
+    long startWrite() {
+        long ticket = writeSequence.incrementAndGet();
+        writesInFlight.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Marks the end of a write to a single document. The id is recorded after the write has been applied, so that a
+     * catch-up pass that starts after it reads the written document.
+     */
+    void finishWrite(long ticket, Object id) {
+        if (tracking) {
+            written.put(String.valueOf(id), writeSequence.incrementAndGet());
+        }
+        writesInFlight.remove(ticket);
+    }
+
+    /**
+     * Marks the end of a bulk write, recording the ids of its actions
+     */
+    void finishBulkWrite(long ticket, byte[] body) {
+        try {
+            if (tracking) {
+                for (String id : bulkIds(body)) {
+                    written.put(id, writeSequence.incrementAndGet());
+                }
+            }
+        } finally {
+            writesInFlight.remove(ticket);
+        }
+    }
+
+    private void migrate(String source, boolean unversioned) {
+        if (exists(indexName)) {
+            logger.warn("ElasticSearch index '{}' exists without alias '{}', a migration is in progress or was interrupted. "
+                    + "Delete the index to restart the migration.", indexName, alias);
+            return;
+        }
+        create(indexName, false);
+        Thread thread = new Thread(() -> {
+            try {
+                copyAndSwap(source, unversioned);
+            } catch (RuntimeException e) {
+                logger.error("Migration of ElasticSearch alias '{}' from '{}' to '{}' failed, alias is unchanged", alias, source, indexName, e);
+            }
+        }, alias + "-index-migration");
+        thread.setDaemon(true);
+        migration = thread;
+        thread.start();
+    }
+
+    private void copyAndSwap(String source, boolean unversioned) {
+        // documents written from here on are copied again by the catch-up passes
+        tracking = true;
+        long copied;
+        long caughtUp = 0;
+        try {
+            copied = reindex(source, null);
+            for (int pass = 0; pass < MAX_CATCH_UP_PASSES; pass++) {
+                Set<String> ids = takeWritten();
+                caughtUp += catchUp(source, ids);
+                if (ids.size() <= CATCH_UP_THRESHOLD) {
+                    break;
+                }
+            }
+            String backup = unversioned && !deletePrevious ? alias + "_unversioned" : null;
+            setWriteBlock(source, true);
+            boolean sourceRemoved = false;
+            try {
+                // writes started before the block may still be applied, their ids are recorded once they complete
+                awaitWritesStartedBefore(writeSequence.get());
+                caughtUp += catchUp(source, takeWritten());
+                template.postForObject(hostUrl + "/{index}/_refresh", null, String.class, indexName);
+                if (backup != null) {
+                    template.postForObject(hostUrl + "/{index}/_clone/{backup}", null, String.class, source, backup);
+                    setWriteBlock(backup, false);
+                    logger.info("Cloned unversioned ElasticSearch index '{}' to '{}'", source, backup);
+                }
+                ObjectNode body = template.objectMapper.createObjectNode();
+                ArrayNode actions = body.putArray("actions");
+                actions.addObject().putObject("add")
+                        .put("index", indexName)
+                        .put("alias", alias)
+                        .put("is_write_index", true);
+                if (unversioned) {
+                    actions.addObject().putObject("remove_index").put("index", source);
+                } else {
+                    actions.addObject().putObject("remove").put("index", source).put("alias", alias);
+                }
+                template.postForObject(hostUrl + "/_aliases", json(body), String.class);
+                sourceRemoved = unversioned;
+            } finally {
+                if (!sourceRemoved) {
+                    setWriteBlock(source, false);
+                }
+            }
+        } finally {
+            tracking = false;
+            written.clear();
+        }
+        logger.info("Moved alias '{}' from '{}' to '{}' after copying {} documents and {} updates",
+                alias, source, indexName, copied, caughtUp);
+        if (!unversioned && deletePrevious) {
+            template.delete(hostUrl + "/{index}", source);
+            logger.info("Deleted previous ElasticSearch index '{}'", source);
+        }
+        template.writeGeneration.written();
+        template.onIndexChanged();
+    }
+
+    // removes the recorded ids, unless written again since they were read, in which case the next pass copies them
+    private Set<String> takeWritten() {
+        Map<String, Long> snapshot = new HashMap<>(written);
+        for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+            written.remove(entry.getKey(), entry.getValue());
+        }
+        return snapshot.keySet();
+    }
+
+    private void awaitWritesStartedBefore(long ticket) {
+        while (writesInFlight.stream().anyMatch(started -> started <= ticket)) {
+            try {
+                Thread.sleep(WRITES_IN_FLIGHT_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(String.format("Interrupted while waiting for writes to '%s'", alias), e);
+            }
+        }
+    }
+
+    // copies the documents with the ids from the source index, and deletes those no longer in it from the new index
+    private long catchUp(String source, Set<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        template.postForObject(hostUrl + "/{index}/_refresh", null, String.class, source);
+        long count = 0;
+        List<String> idList = new ArrayList<>(ids);
+        for (int from = 0; from < idList.size(); from += CATCH_UP_IDS_PER_REQUEST) {
+            List<String> chunk = idList.subList(from, Math.min(from + CATCH_UP_IDS_PER_REQUEST, idList.size()));
+            ObjectNode query = template.objectMapper.createObjectNode();
+            ArrayNode values = query.putObject("ids").putArray("values");
+            chunk.forEach(values::add);
+            count += reindex(source, query);
+            count += deleteMissing(source, chunk);
+        }
+        return count;
+    }
+
+    private long deleteMissing(String source, List<String> ids) {
+        ObjectNode request = template.objectMapper.createObjectNode();
+        ArrayNode values = request.putArray("ids");
+        ids.forEach(values::add);
+        JsonNode response = template.postForObject(hostUrl + "/{index}/_mget?_source=false", json(request), JsonNode.class, source);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long deleted = 0;
+        for (JsonNode doc : response.path("docs")) {
+            if (!doc.path("found").asBoolean()) {
+                byte[] entry = ElasticBulkEntries.delete(template.objectMapper, doc.path("_id").asText());
+                body.write(entry, 0, entry.length);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(ElasticRestTemplate.NDJSON);
+            template.postForObject(hostUrl + "/{index}/_bulk", new HttpEntity<>(body.toByteArray(), headers), String.class, indexName);
+        }
+        return deleted;
+    }
+
+    // ids of the actions of a _bulk body, whose index, create and update actions are followed by a source line
+    private List<String> bulkIds(byte[] body) {
+        List<String> ids = new ArrayList<>();
+        boolean sourceLine = false;
+        int start = 0;
+        for (int i = 0; i <= body.length; i++) {
+            if (i < body.length && body[i] != '\n') {
+                continue;
+            }
+            if (i > start) {
+                if (sourceLine) {
+                    sourceLine = false;
+                } else {
+                    try {
+                        Map.Entry<String, JsonNode> action = template.objectMapper.readTree(body, start, i - start).fields().next();
+                        ids.add(action.getValue().path("_id").asText());
+                        sourceLine = !"delete".equals(action.getKey());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            start = i + 1;
+        }
+        return ids;
+    }
+
+    private void setWriteBlock(String index, boolean blocked) {
+        ObjectNode body = template.objectMapper.createObjectNode();
+        body.put("index.blocks.write", blocked);
+        template.put(hostUrl + "/{index}/_settings", json(body), index);
+    }
+
+    // runs _reindex as a task, polling until it completes, and returns the number of documents written
+    private long reindex(String source, ObjectNode query) {
+        ObjectNode body = template.objectMapper.createObjectNode();
+        body.put("conflicts", "proceed");
+        ObjectNode sourceNode = body.putObject("source").put("index", source);
+        if (query != null) {
+            sourceNode.set("query", query);
+        }
+        body.putObject("dest").put("index", indexName);
+        JsonNode started = template.postForObject(hostUrl + "/_reindex?wait_for_completion=false&slices=auto", json(body), JsonNode.class);
+        String task = started.path("task").asText();
+        while (true) {
+            JsonNode status = template.getForObject(hostUrl + "/_tasks/{task}", JsonNode.class, task);
+            if (status.path("completed").asBoolean()) {
+                if (status.has("error") || status.path("response").path("failures").size() > 0) {
+                    throw new IllegalStateException(String.format("Reindex task %s into '%s' failed: %s", task, indexName,
+                            status.has("error") ? status.get("error") : status.path("response").path("failures")));
+                }
+                JsonNode response = status.path("response");
+                return response.path("created").asLong() + response.path("updated").asLong();
+            }
+            JsonNode taskStatus = status.path("task").path("status");
+            logger.info("Reindexing into '{}': {} of {} documents", indexName,
+                    taskStatus.path("created").asLong() + taskStatus.path("updated").asLong(), taskStatus.path("total").asLong());
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(String.format("Interrupted while reindexing into '%s'", indexName), e);
+            }
+        }
+    }
+
+    // name of the index the alias writes to, or null if the alias does not exist
+    private String currentIndex() {
+        JsonNode response;
+        try {
+            response = template.getForObject(hostUrl + "/_alias/{alias}", JsonNode.class, alias);
+        } catch (HttpClientErrorException.NotFound e) {
+            return null;
+        }
+        String current = null;
+        Iterator<Map.Entry<String, JsonNode>> indices = response.fields();
+        while (indices.hasNext()) {
+            Map.Entry<String, JsonNode> index = indices.next();
+            if (current == null || index.getValue().path("aliases").path(alias).path("is_write_index").asBoolean()) {
+                current = index.getKey();
+            }
+        }
+        return current;
+    }
+
+    private String mappingHashOf(String index) {
+        JsonNode response = template.getForObject(hostUrl + "/{index}/_mapping", JsonNode.class, index);
+        return response.path(index).path("mappings").path("_meta").path(MAPPING_HASH).asText(null);
+    }
+
+    private boolean exists(String index) {
+        try {
+            template.headForHeaders(hostUrl + "/{index}", index);
+            return true;
+        } catch (HttpClientErrorException.NotFound e) {
+            return false;
+        }
+    }
+
+    private void create(String index, boolean withAlias) {
+        ObjectNode body = createIndex.deepCopy();
+        JsonNode mappings = body.get("mappings");
+        (mappings instanceof ObjectNode ? (ObjectNode) mappings : body.putObject("mappings"))
+                .putObject("_meta").put(MAPPING_HASH, mappingHash);
+        if (withAlias) {
+            body.putObject("aliases").putObject(alias).put("is_write_index", true);
+        }
+        template.put(hostUrl + "/{index}", json(body), index);
+    }
+
+    private HttpEntity<String> json(JsonNode body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new HttpEntity<>(body.toString(), headers);
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 6; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -1,20 +1,46 @@
 package com.matthewjohnson42.memex.data.repository.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.matthewjohnson42.memex.data.config.AbstractElasticConfiguration;
+import com.matthewjohnson42.memex.data.config.ElasticHttpTransport;
 import com.matthewjohnson42.memex.data.entity.Entity;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkItem;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkResponse;
+import com.matthewjohnson42.memex.data.metrics.DataMetrics;
 import com.matthewjohnson42.memex.data.repository.Repository;
+import com.matthewjohnson42.memex.data.repository.WriteGeneration;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpRequest;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * A rest template for accessing the ElasticSearch index of the generic type
@@ -26,49 +52,386 @@ public abstract class ElasticRestTemplate<ID, E extends Entity<ID>> extends Rest
 
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    protected static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private String format = "yyyy-MM-dd'T'HH:mm:ss.SSS";
     protected DateTimeFormatter dateTimeFormatter = new DateTimeFormatterBuilder().appendPattern(format).toFormatter();
 
+    // configured like the mapper of the default Jackson message converter so bulk bodies match single document writes
+    protected final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    protected final AbstractElasticConfiguration config;
+    protected DataMetrics metrics = DataMetrics.NOOP;
     protected final String createIndexCommand;
     protected final String entityName;
+    protected final String hostUrl;
     protected final String entityUrl;
     protected final String entityDocUrl;
     protected final String entitySearchUrl;
+    protected final String entityUpdateUrl;
+    protected final String entityBulkUrl;
+    protected final String entityMultiGetUrl;
+    protected final String entitySettingsUrl;
+    protected final String entityPitUrl;
+    protected final String pitUrl;
+    protected final String pitSearchUrl;
+    protected ElasticIndexManager indexManager;
+    // shared with the web client of the same index, see RawTextESWebClient
+    protected final WriteGeneration writeGeneration = new WriteGeneration();
 
     public ElasticRestTemplate(AbstractElasticConfiguration config) {
         assert this.getClass().getSimpleName().endsWith("ESRestTemplate") : "Ancestors of ElasticRestTemplate must have class name suffix of 'ESRestTemplate' and a prefix of the entity type";
+        this.config = config;
+        ElasticHttpTransport httpTransport = config.getHttpTransport();
+        setRequestFactory(httpTransport.getRequestFactory());
+        if (httpTransport.getCompressionInterceptor() != null) {
+            getInterceptors().add(httpTransport.getCompressionInterceptor());
+        }
+        // after compression, so that request sizes are the sizes sent
+        getInterceptors().add(this::meter);
         entityName = this.getClass().getSimpleName().replace("ESRestTemplate", "").toLowerCase();
         createIndexCommand = config.getCreateIndex();
+        hostUrl = String.format("http://%s:%s", config.getHostName(), config.getHostPort());
         entityUrl = String.format("http://%s:%s/%s", config.getHostName(), config.getHostPort(), entityName);
         entityDocUrl = String.format("http://%s:%s/%s/_doc/{id}", config.getHostName(), config.getHostPort(), entityName);
         entitySearchUrl = String.format("http://%s:%s/%s/_search", config.getHostName(), config.getHostPort(), entityName);
+        entityUpdateUrl = String.format("http://%s:%s/%s/_update/{id}", config.getHostName(), config.getHostPort(), entityName);
+        entityBulkUrl = String.format("http://%s:%s/%s/_bulk", config.getHostName(), config.getHostPort(), entityName);
+        entityMultiGetUrl = String.format("http://%s:%s/%s/_mget", config.getHostName(), config.getHostPort(), entityName);
+        entitySettingsUrl = String.format("http://%s:%s/%s/_settings", config.getHostName(), config.getHostPort(), entityName);
+        entityPitUrl = String.format("http://%s:%s/%s/_pit?keep_alive={keepAlive}", config.getHostName(), config.getHostPort(), entityName);
+        pitUrl = String.format("http://%s:%s/_pit", config.getHostName(), config.getHostPort());
+        pitSearchUrl = String.format("http://%s:%s/_search", config.getHostName(), config.getHostPort());
         initIndex();
     }
 
+    @Autowired(required = false)
+    public void setMetrics(DataMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates the index behind the alias named after the entity, or migrates it if its mapping has changed
+     *
+     * @see ElasticIndexManager
+     */
     protected void initIndex() {
-        logger.info("Checking for existing ElasticSearch index '{}'", entityName);
-        boolean indexExists = false;
+        indexManager = new ElasticIndexManager(this, config);
+        indexManager.ensureIndex();
+    }
+
+    public ElasticIndexManager getIndexManager() {
+        return indexManager;
+    }
+
+    /**
+     * @return the counter of writes to the index, incremented by every document and bulk write through this template
+     * and by moves of the alias to a new index
+     */
+    public WriteGeneration getWriteGeneration() {
+        return writeGeneration;
+    }
+
+    /**
+     * Called once the alias has moved to a new index version, for templates that depend on the mapping
+     */
+    protected void onIndexChanged() { }
+
+    /**
+     * Checks for the document with a HEAD request, without reading its source
+     */
+    public boolean existsById(ID id) {
         try {
-            ResponseEntity response = getForEntity(entityUrl, String.class);
-            if (response.getStatusCode().equals(HttpStatus.OK)) {
-                indexExists = true;
-                logger.info("Found existing ElasticSearch index '{}', will not attempt re-creation of index.", entityName);
+            headForHeaders(entityDocUrl, id);
+            return true;
+        } catch (HttpClientErrorException.NotFound e) {
+            return false;
+        }
+    }
+
+    public <S extends E> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (S entity : entities) {
+            byte[] entry = bulkIndexEntry(entity);
+            body.write(entry, 0, entry.length);
+            saved.add(entity);
+        }
+        if (!saved.isEmpty()) {
+            checkBulkResponse(bulk(body.toByteArray()));
+        }
+        return saved;
+    }
+
+    public void deleteAllById(Iterable<? extends ID> ids) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (ID id : ids) {
+            byte[] entry = bulkDeleteEntry(id);
+            body.write(entry, 0, entry.length);
+        }
+        if (body.size() > 0) {
+            checkBulkResponse(bulk(body.toByteArray()));
+        }
+    }
+
+    /**
+     * @return the configured size limit of a bulk request body, for callers building their own bulk requests
+     */
+    public long getBulkBytes() {
+        return config.getBulkBytes();
+    }
+
+    /**
+     * @return leased, pending, available and maximum connection counts of the HTTP connection pool
+     */
+    public PoolStats getConnectionPoolStats() {
+        return config.getHttpTransport().getPoolStats();
+    }
+
+    /**
+     * Creates a bulk processor for this index using the bulk settings of the ElasticSearch configuration
+     */
+    public ElasticBulkProcessor<ID, E> newBulkProcessor() {
+        return new ElasticBulkProcessor<>(this,
+                config.getBulkActions(),
+                config.getBulkBytes(),
+                config.getBulkFlushIntervalMillis(),
+                config.getBulkConcurrentRequests(),
+                config.getBulkMaxRetries(),
+                config.getBulkBackoffMillis());
+    }
+
+    /**
+     * Submits a newline delimited body of actions built from {@link #bulkIndexEntry} and {@link #bulkDeleteEntry}
+     */
+    public ESBulkResponse bulk(byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(NDJSON);
+        HttpEntity<byte[]> request = new HttpEntity<>(body, headers);
+        long ticket = startWrite();
+        try {
+            return exchange(entityBulkUrl, HttpMethod.POST, request, ESBulkResponse.class).getBody();
+        } finally {
+            if (indexManager != null) {
+                indexManager.finishBulkWrite(ticket, body);
             }
-        } catch (Exception e) {
-            if (!(e instanceof HttpClientErrorException.NotFound)) {
-                logger.error("Error when checking for ElasticSearch index '{}'", entityName, e);
+            writeGeneration.written();
+        }
+    }
+
+    /**
+     * Marks the start of a write through the alias, to be followed by {@link #finishWrite}
+     */
+    protected long startWrite() {
+        return indexManager == null ? 0 : indexManager.startWrite();
+    }
+
+    /**
+     * Marks the end of a write to a document, whether or not it succeeded, so that a running index migration copies
+     * the document and search caches see the write
+     */
+    protected void finishWrite(long ticket, ID id) {
+        if (indexManager != null) {
+            indexManager.finishWrite(ticket, id);
+        }
+        writeGeneration.written();
+    }
+
+    protected void checkBulkResponse(ESBulkResponse response) {
+        if (response.isErrors()) {
+            List<String> failures = new ArrayList<>();
+            for (int i = 0; i < response.getItems().size(); i++) {
+                ESBulkItem item = response.getItem(i);
+                if (item.getError() != null) {
+                    failures.add(item.get_id() + " (" + item.getError() + ")");
+                }
             }
+            String msg = String.format("Bulk request on ElasticSearch index '%s' failed for ids %s", entityName, failures);
+            logger.error(msg);
+            throw new RestClientException(msg);
         }
-        if (!indexExists) {
-            logger.info("Did not find existing ElasticSearch index '{}', proceeding with creation", entityName);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> request = new HttpEntity(createIndexCommand, headers);
-            put(entityUrl, request);
-            logger.info("Created ElasticSearch index '{}'", entityName);
+    }
+
+    public byte[] bulkIndexEntry(E entity) {
+        return ElasticBulkEntries.index(objectMapper, entity.getId(), entity);
+    }
+
+    public byte[] bulkDeleteEntry(ID id) {
+        return ElasticBulkEntries.delete(objectMapper, id);
+    }
+
+    /**
+     * Returns the current value of each named index setting, falling back to the cluster default if not set on the index
+     */
+    public Map<String, String> getIndexSettings(String... names) {
+        String url = entitySettingsUrl + "/" + String.join(",", names) + "?flat_settings=true&include_defaults=true";
+        JsonNode response = getForObject(url, JsonNode.class);
+        Map<String, String> settings = new HashMap<>();
+        Iterator<JsonNode> indices = response.elements();
+        if (indices.hasNext()) {
+            JsonNode index = indices.next();
+            for (String name : names) {
+                JsonNode value = index.path("settings").path(name);
+                if (value.isMissingNode()) {
+                    value = index.path("defaults").path(name);
+                }
+                if (!value.isMissingNode()) {
+                    settings.put(name, value.asText());
+                }
+            }
         }
+        return settings;
     }
 
-    ;
+    public void updateIndexSettings(Map<String, ?> settings) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        try {
+            HttpEntity<String> request = new HttpEntity<>(objectMapper.writeValueAsString(settings), headers);
+            put(entitySettingsUrl, request);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Index settings could not be serialized", e);
+        }
+        logger.info("Updated settings {} on ElasticSearch index '{}'", settings, entityName);
+    }
+
+    /**
+     * Opens a point in time on the index, giving searches that use it a consistent view of the index
+     *
+     * @return the id of the point in time
+     */
+    public String openPointInTime(String keepAlive) {
+        JsonNode response = postForObject(entityPitUrl, null, JsonNode.class, keepAlive);
+        return response.get("id").asText();
+    }
+
+    public void closePointInTime(String pitId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, String>> request = new HttpEntity<>(Collections.singletonMap("id", pitId), headers);
+        try {
+            exchange(pitUrl, HttpMethod.DELETE, request, String.class);
+        } catch (HttpClientErrorException.NotFound e) {
+            logger.debug("Point in time on ElasticSearch index '{}' had already expired", entityName);
+        }
+    }
+
+    public void refreshIndex() {
+        postForObject(entityUrl + "/_refresh", null, String.class);
+    }
+
+    /**
+     * Times each request until its response is closed, and records the request and response body sizes.
+     * Operations are named by method and API endpoint, such as "POST _search".
+     */
+    private ClientHttpResponse meter(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (metrics == DataMetrics.NOOP) {
+            return execution.execute(request, body);
+        }
+        String operation = request.getMethodValue() + " " + endpoint(request.getURI().getPath());
+        DataMetrics.Sample sample = metrics.start("elasticsearch", entityName, operation);
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException | RuntimeException e) {
+            sample.stop(e.getClass().getSimpleName());
+            throw e;
+        }
+        return new MeteredResponse(response, (status, responseBytes) -> {
+            sample.stop(status);
+            metrics.recordBytes(entityName, operation, body.length, responseBytes);
+        });
+    }
+
+    private static String endpoint(String path) {
+        for (String segment : path.split("/")) {
+            if (segment.startsWith("_")) {
+                return segment;
+            }
+        }
+        return "index";
+    }
+
+    /**
+     * Counts the bytes read from the response body and reports them with the status once the response is closed
+     */
+    private static final class MeteredResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final BiConsumer<String, Long> onClose;
+        private long bytesRead = 0;
+        private InputStream body;
+        private boolean closed = false;
+
+        private MeteredResponse(ClientHttpResponse response, BiConsumer<String, Long> onClose) {
+            this.response = response;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = new FilterInputStream(response.getBody()) {
+
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) {
+                            bytesRead++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) {
+                            bytesRead += n;
+                        }
+                        return n;
+                    }
+
+                };
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            String status;
+            try {
+                status = String.valueOf(response.getRawStatusCode());
+            } catch (IOException e) {
+                status = e.getClass().getSimpleName();
+            }
+            response.close();
+            onClose.accept(status, bytesRead);
+        }
+
+    }
 
 }
@@ -0,0 +1,191 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.matthewjohnson42.memex.data.config.AbstractElasticConfiguration;
+import com.matthewjohnson42.memex.data.entity.Entity;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkItem;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkResponse;
+import com.matthewjohnson42.memex.data.metrics.DataMetrics;
+import com.matthewjohnson42.memex.data.repository.ReactiveRepository;
+import com.matthewjohnson42.memex.data.repository.WriteGeneration;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A non-blocking client for accessing the ElasticSearch index of the generic type.
+ * Uses the same index, connection settings and request bodies as the corresponding {@link ElasticRestTemplate},
+ * which is responsible for creating the index.
+ *
+ * @param <E> the type corresponding to the ES index
+ * @see com.matthewjohnson42.memex.data.repository.ReactiveRepository
+ */
+public abstract class ElasticWebClient<ID, E extends Entity<ID>> implements ReactiveRepository<E, ID>, DisposableBean {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private String format = "yyyy-MM-dd'T'HH:mm:ss.SSS";
+    protected DateTimeFormatter dateTimeFormatter = new DateTimeFormatterBuilder().appendPattern(format).toFormatter();
+
+    protected final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    protected final WebClient webClient;
+    private final ConnectionProvider connectionProvider;
+    protected DataMetrics metrics = DataMetrics.NOOP;
+    protected WriteGeneration writeGeneration = new WriteGeneration();
+    // the manager of the index written to, which tracks writes while it migrates the index
+    protected ElasticIndexManager indexManager;
+    protected final String entityName;
+    protected final String entityDocUrl;
+    protected final String entityUpdateUrl;
+    protected final String entitySearchUrl;
+    protected final String entityBulkUrl;
+    protected final String entityMultiGetUrl;
+    protected final String pitSearchUrl;
+
+    public ElasticWebClient(AbstractElasticConfiguration config) {
+        assert this.getClass().getSimpleName().endsWith("ESWebClient") : "Ancestors of ElasticWebClient must have class name suffix of 'ESWebClient' and a prefix of the entity type";
+        entityName = this.getClass().getSimpleName().replace("ESWebClient", "").toLowerCase();
+        entityDocUrl = String.format("http://%s:%s/%s/_doc/{id}", config.getHostName(), config.getHostPort(), entityName);
+        entityUpdateUrl = String.format("http://%s:%s/%s/_update/{id}", config.getHostName(), config.getHostPort(), entityName);
+        entitySearchUrl = String.format("http://%s:%s/%s/_search", config.getHostName(), config.getHostPort(), entityName);
+        entityBulkUrl = String.format("http://%s:%s/%s/_bulk", config.getHostName(), config.getHostPort(), entityName);
+        entityMultiGetUrl = String.format("http://%s:%s/%s/_mget", config.getHostName(), config.getHostPort(), entityName);
+        pitSearchUrl = String.format("http://%s:%s/_search", config.getHostName(), config.getHostPort());
+        connectionProvider = ConnectionProvider.builder(entityName)
+                .maxConnections(config.getHttpMaxConnectionsPerRoute())
+                .pendingAcquireTimeout(Duration.ofMillis(config.getHttpConnectionRequestTimeoutMillis()))
+                .maxIdleTime(Duration.ofMillis(config.getHttpKeepAliveMillis()))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getHttpConnectTimeoutMillis())
+                .responseTimeout(Duration.ofMillis(config.getHttpReadTimeoutMillis()))
+                .compress(config.isHttpCompression());
+        webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(config.getHttpMaxInMemoryBytes()))
+                .build();
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.dispose();
+    }
+
+    @Autowired(required = false)
+    public void setMetrics(DataMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public <S extends E> Mono<S> save(S entity) {
+        return write(entity.getId(), webClient.put()
+                        .uri(entityDocUrl, entity.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(entity)
+                        .retrieve()
+                        .toBodilessEntity())
+                .thenReturn(entity);
+    }
+
+    public Mono<Boolean> existsById(ID id) {
+        return webClient.head()
+                .uri(entityDocUrl, id)
+                .retrieve()
+                .toBodilessEntity()
+                .thenReturn(true)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(false));
+    }
+
+    public Mono<Void> deleteById(ID id) {
+        return write(id, webClient.delete()
+                        .uri(entityDocUrl, id)
+                        .retrieve()
+                        .toBodilessEntity())
+                .then();
+    }
+
+    public <S extends E> Flux<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (S entity : entities) {
+            byte[] entry = ElasticBulkEntries.index(objectMapper, entity.getId(), entity);
+            body.write(entry, 0, entry.length);
+            saved.add(entity);
+        }
+        if (saved.isEmpty()) {
+            return Flux.empty();
+        }
+        return bulk(body.toByteArray()).thenMany(Flux.fromIterable(saved));
+    }
+
+    protected Mono<Void> bulk(byte[] body) {
+        return Mono.defer(() -> {
+                    long ticket = indexManager == null ? 0 : indexManager.startWrite();
+                    return webClient.post()
+                            .uri(entityBulkUrl)
+                            .contentType(NDJSON)
+                            .bodyValue(body)
+                            .retrieve()
+                            .bodyToMono(ESBulkResponse.class)
+                            .doFinally(signal -> {
+                                if (indexManager != null) {
+                                    indexManager.finishBulkWrite(ticket, body);
+                                }
+                                writeGeneration.written();
+                            });
+                })
+                .flatMap(response -> {
+                    if (!response.isErrors()) {
+                        return Mono.empty();
+                    }
+                    List<String> failures = new ArrayList<>();
+                    for (int i = 0; i < response.getItems().size(); i++) {
+                        ESBulkItem item = response.getItem(i);
+                        if (item.getError() != null) {
+                            failures.add(item.get_id() + " (" + item.getError() + ")");
+                        }
+                    }
+                    String msg = String.format("Bulk request on ElasticSearch index '%s' failed for ids %s", entityName, failures);
+                    logger.error(msg);
+                    return Mono.error(new RestClientException(msg));
+                });
+    }
+
+    /**
+     * Runs a write to a document, marking its start on subscription and its end, whether or not it succeeded, so
+     * that a running index migration copies the document and search caches see the write
+     */
+    protected <T> Mono<T> write(ID id, Mono<T> request) {
+        return Mono.defer(() -> {
+            long ticket = indexManager == null ? 0 : indexManager.startWrite();
+            return request.doFinally(signal -> {
+                if (indexManager != null) {
+                    indexManager.finishWrite(ticket, id);
+                }
+                writeGeneration.written();
+            });
+        });
+    }
+
+}
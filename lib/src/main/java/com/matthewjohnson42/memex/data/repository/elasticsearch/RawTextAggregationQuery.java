@@ -0,0 +1,105 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import java.time.LocalDateTime;
+
+/**
+ * Selects the raw text counted by an aggregation, by an optional search string and optional create and update date
+ * ranges. Without a search string every document in the date ranges is counted. Date histograms group the selected
+ * documents by calendar interval of their create or update date.
+ *
+ * @see RawTextESQueries#count(RawTextAggregationQuery)
+ * @see RawTextESQueries#dateHistogram(RawTextAggregationQuery, DateField, CalendarInterval)
+ */
+public class RawTextAggregationQuery {
+
+    public enum DateField {
+
+        CREATE_DATE("createDateTime"),
+        UPDATE_DATE("updateDateTime");
+
+        private final String fieldName;
+
+        DateField(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+    }
+
+    public enum CalendarInterval {
+
+        HOUR, DAY, WEEK, MONTH, QUARTER, YEAR;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+    }
+
+    private String searchString;
+    private Integer fuzziness = 1;
+    private LocalDateTime startCreateDate;
+    private LocalDateTime endCreateDate;
+    private LocalDateTime startUpdateDate;
+    private LocalDateTime endUpdateDate;
+
+    public String getSearchString() {
+        return searchString;
+    }
+
+    // null or empty to select every document
+    public RawTextAggregationQuery setSearchString(String searchString) {
+        this.searchString = searchString;
+        return this;
+    }
+
+    public Integer getFuzziness() {
+        return fuzziness;
+    }
+
+    // null for an exact match
+    public RawTextAggregationQuery setFuzziness(Integer fuzziness) {
+        this.fuzziness = fuzziness;
+        return this;
+    }
+
+    public LocalDateTime getStartCreateDate() {
+        return startCreateDate;
+    }
+
+    public LocalDateTime getEndCreateDate() {
+        return endCreateDate;
+    }
+
+    public RawTextAggregationQuery setCreateDateRange(LocalDateTime startCreateDate, LocalDateTime endCreateDate) {
+        this.startCreateDate = startCreateDate;
+        this.endCreateDate = endCreateDate;
+        return this;
+    }
+
+    public LocalDateTime getStartUpdateDate() {
+        return startUpdateDate;
+    }
+
+    public LocalDateTime getEndUpdateDate() {
+        return endUpdateDate;
+    }
+
+    public RawTextAggregationQuery setUpdateDateRange(LocalDateTime startUpdateDate, LocalDateTime endUpdateDate) {
+        this.startUpdateDate = startUpdateDate;
+        this.endUpdateDate = endUpdateDate;
+        return this;
+    }
+
+    LocalDateTime getStart(DateField field) {
+        return field == DateField.CREATE_DATE ? startCreateDate : startUpdateDate;
+    }
+
+    LocalDateTime getEnd(DateField field) {
+        return field == DateField.CREATE_DATE ? endCreateDate : endUpdateDate;
+    }
+
+}
@@ -0,0 +1,352 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Builds the raw text ElasticSearch query bodies shared by the blocking and reactive clients.
+ * Queries are written with a streaming generator into a buffer reused by each thread, so building a query allocates
+ * little beyond the returned bytes, and every value is escaped by the generator.
+ *
+ * @see RawTextESRestTemplate
+ * @see RawTextESWebClient
+ */
+public class RawTextESQueries {
+
+    public static final String DATE_HISTOGRAM = "date_histogram";
+
+    // the format of the date fields in the mapping, matching the date time formatter of the templates
+    private static final String DATE_FORMAT = "strict_date_hour_minute_second_millis";
+
+    private static final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(2048));
+
+    private final JsonFactory jsonFactory;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    // keyword field holding the id, which depends on the mapping of the index behind the alias
+    private volatile String idSortField = "id.keyword";
+
+    // highlighter type, "fvh" when the text content has term vectors with offsets, otherwise the default highlighter
+    private volatile String highlighterType;
+
+    public RawTextESQueries(JsonFactory jsonFactory, DateTimeFormatter dateTimeFormatter) {
+        this.jsonFactory = jsonFactory;
+        this.dateTimeFormatter = dateTimeFormatter;
+    }
+
+    public String getIdSortField() {
+        return idSortField;
+    }
+
+    public RawTextESQueries setIdSortField(String idSortField) {
+        this.idSortField = idSortField;
+        return this;
+    }
+
+    public String getHighlighterType() {
+        return highlighterType;
+    }
+
+    public RawTextESQueries setHighlighterType(String highlighterType) {
+        this.highlighterType = highlighterType;
+        return this;
+    }
+
+    // matches on the document _id, which does not depend on the mapping of the id field
+    public byte[] searchById(String id) {
+        return write(generator -> {
+            generator.writeBooleanField("seq_no_primary_term", true);
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("ids");
+            generator.writeArrayFieldStart("values");
+            generator.writeString(id);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+
+    public byte[] search(RawTextSearchQuery query) {
+        Assert.hasLength(query.getSearchString(), "Search string cannot be null or the empty string");
+        Assert.isTrue(query.getSize() > 0, "Page size must be positive");
+        return write(generator -> {
+            if (query.getFrom() != null) {
+                generator.writeNumberField("from", query.getFrom());
+            }
+            generator.writeNumberField("size", query.getSize());
+            writeTrackTotalHits(generator, query.getTotalHitsPolicy());
+            writePit(generator, query.getPit(), query.getKeepAlive());
+            if (!query.isTextContent()) {
+                writeSourceExcludes(generator, "textContent");
+            }
+            writeSearchAfter(generator, query.getSearchAfter());
+            writeQuery(generator, query.getSearchString(), query.getFuzziness(),
+                    query.getStartCreateDate(), query.getEndCreateDate(), query.getStartUpdateDate(), query.getEndUpdateDate());
+            generator.writeArrayFieldStart("sort");
+            writeSort(generator, "createDateTime", "desc");
+            if (query.getPit() != null) {
+                writeIdSort(generator);
+            }
+            generator.writeEndArray();
+            if (query.isHighlight()) {
+                writeHighlight(generator);
+            }
+        });
+    }
+
+    /**
+     * Counts the selected documents exactly, as a request to the _count API
+     */
+    public byte[] count(RawTextAggregationQuery query) {
+        return write(generator -> writeAggregationQuery(generator, query));
+    }
+
+    /**
+     * Counts the selected documents per calendar interval of a date field. Intervals without documents between the
+     * first and last documents, or within the range of the date field if one is set, are returned with a zero count.
+     */
+    public byte[] dateHistogram(RawTextAggregationQuery query,
+                                RawTextAggregationQuery.DateField field,
+                                RawTextAggregationQuery.CalendarInterval interval) {
+        return write(generator -> {
+            generator.writeNumberField("size", 0);
+            generator.writeBooleanField("track_total_hits", true);
+            writeAggregationQuery(generator, query);
+            generator.writeObjectFieldStart("aggs");
+            generator.writeObjectFieldStart(DATE_HISTOGRAM);
+            generator.writeObjectFieldStart("date_histogram");
+            generator.writeStringField("field", field.getFieldName());
+            generator.writeStringField("calendar_interval", interval.getName());
+            generator.writeStringField("format", DATE_FORMAT);
+            generator.writeNumberField("min_doc_count", 0);
+            LocalDateTime start = query.getStart(field);
+            LocalDateTime end = query.getEnd(field);
+            if (start != null && end != null) {
+                generator.writeObjectFieldStart("extended_bounds");
+                generator.writeStringField("min", dateTimeFormatter.format(start));
+                generator.writeStringField("max", dateTimeFormatter.format(end));
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Matches documents whose text content contains the words of the prefix, the last of which may be incomplete,
+     * through the search_as_you_type subfield. Kept cheap for type ahead: no highlighting, no text content, no
+     * total hit count and no sort beyond relevance.
+     */
+    public byte[] suggest(String prefix, int size) {
+        Assert.hasText(prefix, "Prefix cannot be null or blank");
+        Assert.isTrue(size > 0, "Size must be positive");
+        return write(generator -> {
+            generator.writeNumberField("size", size);
+            generator.writeBooleanField("track_total_hits", false);
+            writeSourceExcludes(generator, "textContent");
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("multi_match");
+            generator.writeStringField("query", prefix);
+            generator.writeStringField("type", "bool_prefix");
+            generator.writeStringField("operator", "and");
+            generator.writeArrayFieldStart("fields");
+            generator.writeString("textContent.suggest");
+            generator.writeString("textContent.suggest._2gram");
+            generator.writeString("textContent.suggest._3gram");
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        });
+    }
+
+    public byte[] searchAllAfter(String afterId, int batchSize, String pit, String keepAlive) {
+        return write(generator -> {
+            generator.writeNumberField("size", batchSize);
+            writePit(generator, pit, keepAlive);
+            if (afterId != null) {
+                generator.writeArrayFieldStart("search_after");
+                generator.writeString(afterId);
+                generator.writeEndArray();
+            }
+            generator.writeObjectFieldStart("query");
+            generator.writeObjectFieldStart("match_all");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("sort");
+            writeIdSort(generator);
+            generator.writeEndArray();
+        });
+    }
+
+    private void writeAggregationQuery(JsonGenerator generator, RawTextAggregationQuery query) throws IOException {
+        writeQuery(generator, query.getSearchString(), query.getFuzziness(),
+                query.getStartCreateDate(), query.getEndCreateDate(), query.getStartUpdateDate(), query.getEndUpdateDate());
+    }
+
+    // a match on the text content if there is a search string, filtered by the date ranges that have a bound
+    private void writeQuery(JsonGenerator generator,
+                            String searchString,
+                            Integer fuzziness,
+                            LocalDateTime startCreateDate,
+                            LocalDateTime endCreateDate,
+                            LocalDateTime startUpdateDate,
+                            LocalDateTime endUpdateDate) throws IOException {
+        generator.writeObjectFieldStart("query");
+        generator.writeObjectFieldStart("bool");
+        if (searchString != null && !searchString.isEmpty()) {
+            generator.writeObjectFieldStart("must");
+            generator.writeObjectFieldStart("match");
+            generator.writeObjectFieldStart("textContent");
+            generator.writeStringField("query", searchString);
+            if (fuzziness != null) {
+                generator.writeNumberField("fuzziness", fuzziness);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        boolean filterCreateDate = startCreateDate != null || endCreateDate != null;
+        boolean filterUpdateDate = startUpdateDate != null || endUpdateDate != null;
+        if (filterCreateDate || filterUpdateDate) {
+            generator.writeArrayFieldStart("filter");
+            if (filterCreateDate) {
+                writeRange(generator, "createDateTime", startCreateDate, endCreateDate);
+            }
+            if (filterUpdateDate) {
+                writeRange(generator, "updateDateTime", startUpdateDate, endUpdateDate);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeTrackTotalHits(JsonGenerator generator, TotalHitsPolicy policy) throws IOException {
+        if (policy == null) {
+            return;
+        }
+        if (policy.isExact() || !policy.isCounted()) {
+            generator.writeBooleanField("track_total_hits", policy.isCounted());
+        } else {
+            generator.writeNumberField("track_total_hits", policy.getCap());
+        }
+    }
+
+    private void writePit(JsonGenerator generator, String pit, String keepAlive) throws IOException {
+        if (pit != null) {
+            generator.writeObjectFieldStart("pit");
+            generator.writeStringField("id", pit);
+            generator.writeStringField("keep_alive", keepAlive);
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeSourceExcludes(JsonGenerator generator, String field) throws IOException {
+        generator.writeObjectFieldStart("_source");
+        generator.writeArrayFieldStart("excludes");
+        generator.writeString(field);
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private void writeSearchAfter(JsonGenerator generator, List<Object> searchAfter) throws IOException {
+        if (searchAfter != null) {
+            generator.writeArrayFieldStart("search_after");
+            for (Object value : searchAfter) {
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Long || value instanceof Integer) {
+                    generator.writeNumber(((Number) value).longValue());
+                } else if (value instanceof Number) {
+                    generator.writeNumber(((Number) value).doubleValue());
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeRange(JsonGenerator generator, String field, LocalDateTime start, LocalDateTime end) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("range");
+        generator.writeObjectFieldStart(field);
+        if (start != null) {
+            generator.writeStringField("gte", dateTimeFormatter.format(start));
+        }
+        if (end != null) {
+            generator.writeStringField("lte", dateTimeFormatter.format(end));
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeSort(JsonGenerator generator, String field, String order) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(field);
+        generator.writeStringField("order", order);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    // an unmapped id field, as on an instance that has not seen an index migration, sorts without failing
+    private void writeIdSort(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(idSortField);
+        generator.writeStringField("order", "asc");
+        generator.writeStringField("unmapped_type", "keyword");
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeHighlight(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart("highlight");
+        generator.writeNumberField("number_of_fragments", 3);
+        generator.writeNumberField("fragment_size", 150);
+        generator.writeObjectFieldStart("fields");
+        generator.writeObjectFieldStart("textContent");
+        if (highlighterType != null) {
+            generator.writeStringField("type", highlighterType);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeArrayFieldStart("pre_tags");
+        generator.writeString("<b><i>");
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("post_tags");
+        generator.writeString("</b></i>");
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private byte[] write(QueryWriter writer) {
+        ByteArrayBuilder buffer = buffers.get();
+        buffer.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            writer.write(generator);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Query could not be written", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface QueryWriter {
+
+        void write(JsonGenerator generator) throws IOException;
+
+    }
+
+}
@@ -1,24 +1,52 @@
 package com.matthewjohnson42.memex.data.repository.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.matthewjohnson42.memex.data.config.RawTextElasticConfiguration;
 import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
 import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
-import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESHit;
-import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESWrapper;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESDoc;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESDocs;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESSearchResult;
+import com.matthewjohnson42.memex.data.repository.CursorPage;
+import com.matthewjohnson42.memex.data.repository.DateHistogramBucket;
+import com.matthewjohnson42.memex.data.repository.MultiSearchResult;
+import com.matthewjohnson42.memex.data.repository.RawTextSearchRepository;
+import com.matthewjohnson42.memex.data.repository.SearchPage;
 import org.springframework.context.annotation.Profile;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Custom implementation of an ElasticSearch REST client. Used for accessing the ElasticSearch data store.
@@ -29,34 +57,182 @@ import java.util.Optional;
  */
 @Profile("enableelasticrepositories")
 @Component
-public class RawTextESRestTemplate extends ElasticRestTemplate<String, RawTextES> {
+public class RawTextESRestTemplate extends ElasticRestTemplate<String, RawTextES> implements RawTextSearchRepository {
 
-    private final String rawTextSearchByIdQuery;
-    private final String rawTextSearchByTextContentFuzzyQuery;
+    // a version guard that cannot be met leaves the document unchanged, reported as a noop result
+    private static final String PATCH_SCRIPT =
+            "long current = ctx._source.version == null ? 0L : ((Number) ctx._source.version).longValue(); "
+                    + "if (params.expected != null && current != ((Number) params.expected).longValue()) { ctx.op = 'none'; } "
+                    + "else { ctx._source.putAll(params.doc); ctx._source.version = current + 1; }";
 
-    private final Integer fuzziness = 1;
+    private final String cursorKeepAlive = "1m";
+    private final String entityCountUrl;
+    private final String entityMultiSearchUrl;
+
+    private final RawTextESQueries queries;
+    private final RawTextESSearchResponseExtractor searchResponseExtractor;
+    private final boolean searchTextContent;
 
     public RawTextESRestTemplate(RawTextElasticConfiguration config) {
         super(config);
-        this.rawTextSearchByIdQuery = config.getRawTextSearchById();
-        this.rawTextSearchByTextContentFuzzyQuery = config.getRawTextSearchByTextContentFuzzy();
+        this.searchTextContent = config.isSearchTextContent();
+        this.entityCountUrl = entityUrl + "/_count";
+        this.entityMultiSearchUrl = entityUrl + "/_msearch";
+        this.queries = new RawTextESQueries(objectMapper.getFactory(), dateTimeFormatter);
+        this.searchResponseExtractor = new RawTextESSearchResponseExtractor(objectMapper.getFactory(), dateTimeFormatter);
+        onIndexChanged();
+    }
+
+    /**
+     * @return the query builder of this template, which tracks the mapping of the index behind the alias
+     */
+    public RawTextESQueries getQueries() {
+        return queries;
+    }
+
+    public boolean isSearchTextContent() {
+        return searchTextContent;
+    }
+
+    /**
+     * Sorts on the keyword id field and uses the fast vector highlighter only where the index behind the alias has
+     * them, so that queries keep working while the index is rebuilt with a changed mapping
+     */
+    @Override
+    protected void onIndexChanged() {
+        // may be called by an index migration before the constructor has completed
+        if (queries != null) {
+            queries.setIdSortField(indexManager.resolveIdSortField());
+            JsonNode textContentMapping = indexManager.fieldMapping("textContent");
+            boolean termVectors = textContentMapping != null
+                    && "with_positions_offsets".equals(textContentMapping.path("term_vector").asText());
+            queries.setHighlighterType(termVectors ? "fvh" : null);
+        }
     }
 
     public Optional<RawTextES> findById(String id) {
-        String query = String.format(rawTextSearchByIdQuery, id);
+        byte[] query = queries.searchById(id);
+        RawTextESSearchResult result = search(entitySearchUrl, query);
+        if (result.getHits().size() > 0) {
+            return Optional.of(new RawTextES(result.getHits().get(0)));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reads the document through the get API with source filtering excluding the text content
+     */
+    public Optional<RawTextES> findMetadataById(String id) {
+        try {
+            RawTextESDoc doc = getForObject(entityDocUrl + "?_source_excludes=textContent", RawTextESDoc.class, id);
+            return doc != null && doc.isFound() ? Optional.of(doc.toEntity().setId(id)) : Optional.empty();
+        } catch (HttpClientErrorException.NotFound e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Updates the document through the _update API with a script that merges the non-null fields of the changes
+     * into the source and increments the version, returning the updated source in the same response.
+     * If the changes carry the sequence number and primary term of a previous read, the update is conditional on
+     * them through if_seq_no and if_primary_term. Otherwise the script applies the update only if the stored version
+     * matches the expected version.
+     */
+    public Optional<RawTextES> patch(String id, RawTextES changes, Long expectedVersion) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> requestBody = new HttpEntity<>(query, headers);
-        RawTextESWrapper responseBody = postForObject(entitySearchUrl, requestBody, RawTextESWrapper.class);
-        if (responseBody.getHits().getHits().size() > 0) {
-            return Optional.of(responseBody.getHits().getHits().get(0).get_source());
-        } else {
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(patchBody(objectMapper, changes, expectedVersion), headers);
+        JsonNode response;
+        long ticket = startWrite();
+        try {
+            response = postForObject(entityUpdateUrl + patchParameters(changes), request, JsonNode.class, id);
+        } catch (HttpClientErrorException.NotFound e) {
             return Optional.empty();
+        } catch (HttpClientErrorException.Conflict e) {
+            throw new OptimisticLockingFailureException(String.format("Raw text with id %s was modified since it was read", id), e);
+        } finally {
+            finishWrite(ticket, id);
+        }
+        return Optional.of(readPatched(objectMapper, response, id, expectedVersion));
+    }
+
+    /**
+     * Builds the body of an update request applying the non-null fields of the changes with the patch script
+     */
+    static Map<String, Object> patchBody(ObjectMapper objectMapper, RawTextES changes, Long expectedVersion) {
+        Map<String, Object> doc = objectMapper.convertValue(changes, new TypeReference<Map<String, Object>>() { });
+        doc.values().removeIf(Objects::isNull);
+        doc.remove("version");
+        Map<String, Object> params = new HashMap<>();
+        params.put("doc", doc);
+        params.put("expected", expectedVersion);
+        Map<String, Object> script = new HashMap<>();
+        script.put("lang", "painless");
+        script.put("source", PATCH_SCRIPT);
+        script.put("params", params);
+        return Collections.singletonMap("script", script);
+    }
+
+    static String patchParameters(RawTextES changes) {
+        String parameters = "?_source=true";
+        if (changes.getSeqNo() != null && changes.getPrimaryTerm() != null) {
+            parameters += String.format("&if_seq_no=%d&if_primary_term=%d", changes.getSeqNo(), changes.getPrimaryTerm());
         }
+        return parameters;
+    }
+
+    /**
+     * Reads the patched entity from an update response
+     *
+     * @throws OptimisticLockingFailureException if the patch script left the document unchanged due to its version
+     */
+    static RawTextES readPatched(ObjectMapper objectMapper, JsonNode response, String id, Long expectedVersion) {
+        if ("noop".equals(response.path("result").asText())) {
+            throw new OptimisticLockingFailureException(String.format("Raw text with id %s is no longer at version %d", id, expectedVersion));
+        }
+        JsonNode get = response.path("get");
+        RawTextES patched = objectMapper.convertValue(get.path("_source"), RawTextES.class);
+        patched.setSeqNo(get.path("_seq_no").asLong());
+        patched.setPrimaryTerm(get.path("_primary_term").asLong());
+        return patched;
+    }
+
+    public Iterable<RawTextES> findAllById(Iterable<String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        List<RawTextES> found = new ArrayList<>();
+        if (idList.isEmpty()) {
+            return found;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, List<String>>> requestBody = new HttpEntity<>(Collections.singletonMap("ids", idList), headers);
+        RawTextESDocs responseBody = postForObject(entityMultiGetUrl, requestBody, RawTextESDocs.class);
+        for (RawTextESDoc doc : responseBody.getDocs()) {
+            if (doc.isFound()) {
+                found.add(doc.toEntity());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Streams the index through a point in time sorted on id, reading one search_after page per batch
+     */
+    public Stream<RawTextES> streamAll(int batchSize, String afterId) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        ExportSpliterator spliterator = new ExportSpliterator(openPointInTime(cursorKeepAlive), batchSize, afterId);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
     }
 
     public void deleteById(String id) {
-        delete(entityDocUrl, id);
+        long ticket = startWrite();
+        try {
+            delete(entityDocUrl, id);
+        } finally {
+            finishWrite(ticket, id);
+        }
     }
 
     public RawTextES save(RawTextES rawTextES) {
@@ -64,48 +240,285 @@ public class RawTextESRestTemplate extends ElasticRestTemplate<String, RawTextES
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         HttpEntity<RawTextES> requestBody = new HttpEntity(rawTextES, headers);
-        put(entityDocUrl, requestBody, rawTextId);
+        long ticket = startWrite();
+        try {
+            put(entityDocUrl, requestBody, rawTextId);
+        } finally {
+            finishWrite(ticket, rawTextId);
+        }
         return rawTextES; // do not use "findIfExists" to validate stored value given HTTP request latency and non-blocking nature
     }
 
-    public Page<RawTextESComposite> getPageFromSearchString(
+    /**
+     * Counts matches up to the ElasticSearch default of 10000, the returned page flags a total beyond that as a lower
+     * bound
+     */
+    public SearchPage<RawTextESComposite> getPageFromSearchString(
             String searchString,
             LocalDateTime startCreateDate,
             LocalDateTime endCreateDate,
             LocalDateTime startUpdateDate,
             LocalDateTime endUpdateDate,
             Pageable pageable) {
-        String query = getSearchQuery(searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate, pageable);
+        return getPageFromSearchString(searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate,
+                pageable, TotalHitsPolicy.DEFAULT);
+    }
+
+    /**
+     * Returns a page of the search results, counting matches as far as the policy allows. Broad searches are faster
+     * with a low cap or without counting, use {@link #count} where an exact total is needed.
+     */
+    public SearchPage<RawTextESComposite> getPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            Pageable pageable,
+            TotalHitsPolicy totalHitsPolicy) {
+        Assert.notNull(pageable, "Pageable cannot be null");
+        RawTextSearchQuery query = new RawTextSearchQuery(searchString)
+                .setCreateDateRange(startCreateDate, endCreateDate)
+                .setUpdateDateRange(startUpdateDate, endUpdateDate)
+                .setPage(pageable)
+                .setTextContent(searchTextContent)
+                .setTotalHitsPolicy(totalHitsPolicy);
+        return search(query).toPage(pageable);
+    }
+
+    /**
+     * Runs the search, through the point in time search endpoint if the query has a point in time
+     */
+    public RawTextESSearchResult search(RawTextSearchQuery query) {
+        return search(query.getPit() == null ? entitySearchUrl : pitSearchUrl, queries.search(query));
+    }
+
+    /**
+     * Returns a page of the search results through a point in time and search_after cursor, as an alternative to
+     * {@link #getPageFromSearchString} for reading deep into the results. Results are sorted by create date, then id.
+     *
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     */
+    public CursorPage<RawTextESComposite> getCursorPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            String cursor,
+            int pageSize) {
+        Assert.hasLength(searchString, "Search string cannot be null or the empty string");
+        Assert.isTrue(pageSize > 0, "Page size must be positive");
+        SearchCursor searchCursor = cursor == null ? new SearchCursor(openPointInTime(cursorKeepAlive), null) : decodeCursor(cursor);
+        RawTextSearchQuery query = new RawTextSearchQuery(searchString)
+                .setCreateDateRange(startCreateDate, endCreateDate)
+                .setUpdateDateRange(startUpdateDate, endUpdateDate)
+                .setSize(pageSize)
+                .setPit(searchCursor.pit, cursorKeepAlive)
+                .setSearchAfter(searchCursor.after)
+                .setTextContent(searchTextContent);
+        RawTextESSearchResult result = search(query);
+        String pit = result.getPitId() == null ? searchCursor.pit : result.getPitId();
+        if (result.getHits().size() < pageSize) {
+            closePointInTime(pit);
+            return new CursorPage<>(result.getHits(), null);
+        }
+        return new CursorPage<>(result.getHits(), encodeCursor(new SearchCursor(pit, result.getLastSort())));
+    }
+
+    /**
+     * Runs the searches in a single _msearch request and returns their results in the same order. A search that
+     * fails does not fail the others, its result holds the error instead of a page.
+     * Each query reads a page by from and size, through {@link RawTextSearchQuery#setPage}, not by point in time.
+     */
+    public List<MultiSearchResult<RawTextESComposite>> multiSearch(List<RawTextSearchQuery> searchQueries) {
+        List<MultiSearchResult<RawTextESComposite>> results = new ArrayList<>(searchQueries.size());
+        if (searchQueries.isEmpty()) {
+            return results;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (RawTextSearchQuery query : searchQueries) {
+            Assert.isNull(query.getPit(), "Multi search queries cannot use a point in time");
+            byte[] search = queries.search(query);
+            body.write('{');
+            body.write('}');
+            body.write('\n');
+            body.write(search, 0, search.length);
+            body.write('\n');
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(NDJSON);
+        HttpEntity<byte[]> request = new HttpEntity<>(body.toByteArray(), headers);
+        List<RawTextESSearchResult> responses = execute(entityMultiSearchUrl, HttpMethod.POST, httpEntityCallback(request),
+                response -> searchResponseExtractor.readMultiSearch(response.getBody()));
+        if (responses == null || responses.size() != searchQueries.size()) {
+            throw new IllegalStateException(String.format("Multi search of %d queries returned %d responses",
+                    searchQueries.size(), responses == null ? 0 : responses.size()));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            RawTextESSearchResult result = responses.get(i);
+            if (result.getError() != null) {
+                logger.warn("Search {} of multi search failed with status {}: {}", i, result.getStatus(), result.getError());
+                results.add(MultiSearchResult.failure(result.getStatus(), result.getError()));
+            } else {
+                metrics.recordSearch(entityName, result.getTook(), result.getFailedShards(), result.getTotalHits());
+                results.add(MultiSearchResult.success(result.toPage(toPageable(searchQueries.get(i)))));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Returns the raw text matching a type ahead prefix, without text content or highlights
+     *
+     * @see RawTextESQueries#suggest(String, int)
+     */
+    public List<RawTextESComposite> suggest(String prefix, int size) {
+        return search(entitySearchUrl, queries.suggest(prefix, size)).getHits();
+    }
+
+    /**
+     * Counts the selected raw text exactly through the _count API, without scoring or returning hits
+     */
+    public long count(RawTextAggregationQuery query) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> request = new HttpEntity(query, headers);
-        RawTextESWrapper responseBody = postForObject(entitySearchUrl, request, RawTextESWrapper.class);
-        Integer totalHits = responseBody.getHits().getTotal().getValue();
-        List<RawTextESComposite> pageContent = new ArrayList<>();
-        for (RawTextESHit hit : responseBody.getHits().getHits()) {
-            RawTextESComposite rawTextESComposite = new RawTextESComposite(hit.get_source());
-            rawTextESComposite.setHighlights(hit.getHighlight().getTextContent());
-            pageContent.add(rawTextESComposite);
-        }
-        return new PageImpl<>(pageContent, pageable, totalHits);
-    }
-
-    private String getSearchQuery(String searchString,
-                                  LocalDateTime startCreateDate,
-                                  LocalDateTime endCreateDate,
-                                  LocalDateTime startUpdateDate,
-                                  LocalDateTime endUpdateDate,
-                                  Pageable pageable) {
-        Assert.hasLength(searchString, "Search string cannot be null or the empty string");
-        Assert.notNull(pageable, "Pageable cannot be null");
-        Integer startIndex = pageable.getPageNumber() * pageable.getPageSize();
-        Integer pageSize = pageable.getPageSize();
-        String startCreate = startCreateDate == null ? "null" : "\"" + dateTimeFormatter.format(startCreateDate) + "\"";
-        String endCreate = endCreateDate == null ? "null" : "\"" + dateTimeFormatter.format(endCreateDate) + "\"";
-        String startUpdate = startUpdateDate == null ? "null" : "\"" + dateTimeFormatter.format(startUpdateDate) + "\"";
-        String endUpdate = endUpdateDate == null ? "null" : "\"" + dateTimeFormatter.format(endUpdateDate) + "\"";
-        return String.format(rawTextSearchByTextContentFuzzyQuery,
-                startIndex, pageSize, searchString, fuzziness, startCreate, endCreate, startUpdate, endUpdate);
+        JsonNode response = postForObject(entityCountUrl, new HttpEntity<>(queries.count(query), headers), JsonNode.class);
+        return response.path("count").asLong();
+    }
+
+    /**
+     * Counts the selected raw text per calendar interval of the date field in a single request that returns no hits.
+     * Buckets are in date order and include the intervals without documents.
+     */
+    public List<DateHistogramBucket> getDateHistogram(RawTextAggregationQuery query,
+                                                      RawTextAggregationQuery.DateField field,
+                                                      RawTextAggregationQuery.CalendarInterval interval) {
+        Assert.notNull(field, "Date field cannot be null");
+        Assert.notNull(interval, "Calendar interval cannot be null");
+        JsonNode response = aggregate(queries.dateHistogram(query, field, interval));
+        List<DateHistogramBucket> buckets = new ArrayList<>();
+        for (JsonNode bucket : response.path("aggregations").path(RawTextESQueries.DATE_HISTOGRAM).path("buckets")) {
+            buckets.add(new DateHistogramBucket(
+                    LocalDateTime.parse(bucket.path("key_as_string").asText(), dateTimeFormatter),
+                    bucket.path("doc_count").asLong()));
+        }
+        return buckets;
+    }
+
+    /**
+     * Releases the point in time held by a cursor that will not be read to its last page
+     */
+    public void closeCursor(String cursor) {
+        closePointInTime(decodeCursor(cursor).pit);
+    }
+
+    private RawTextESSearchResult search(String url, byte[] query) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<byte[]> request = new HttpEntity<>(query, headers);
+        RawTextESSearchResult result = execute(url, HttpMethod.POST, httpEntityCallback(request), searchResponseExtractor);
+        metrics.recordSearch(entityName, result.getTook(), result.getFailedShards(), result.getTotalHits());
+        return result;
+    }
+
+    private Pageable toPageable(RawTextSearchQuery query) {
+        int from = query.getFrom() == null ? 0 : query.getFrom();
+        return PageRequest.of(from / query.getSize(), query.getSize());
+    }
+
+    private JsonNode aggregate(byte[] query) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        JsonNode response = postForObject(entitySearchUrl, new HttpEntity<>(query, headers), JsonNode.class);
+        metrics.recordSearch(entityName, response.path("took").asLong(), response.path("_shards").path("failed").asInt(),
+                response.path("hits").path("total").path("value").asLong());
+        return response;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Value could not be serialized", e);
+        }
+    }
+
+    private String encodeCursor(SearchCursor searchCursor) {
+        Map<String, Object> cursor = new HashMap<>();
+        cursor.put("pit", searchCursor.pit);
+        cursor.put("after", searchCursor.after);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(toJson(cursor).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SearchCursor decodeCursor(String cursor) {
+        try {
+            JsonNode node = objectMapper.readTree(Base64.getUrlDecoder().decode(cursor));
+            List<Object> after = objectMapper.convertValue(node.get("after"), new TypeReference<List<Object>>() { });
+            return new SearchCursor(node.get("pit").asText(), after);
+        } catch (IOException | IllegalArgumentException | NullPointerException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid search cursor", e);
+        }
+    }
+
+    /**
+     * Reads the next batch of an export only once the previous batch has been consumed
+     */
+    private final class ExportSpliterator extends Spliterators.AbstractSpliterator<RawTextES> {
+
+        private final int batchSize;
+        private String pit;
+        private String afterId;
+        private Iterator<RawTextESComposite> batch = Collections.emptyIterator();
+        private boolean exhausted = false;
+
+        private ExportSpliterator(String pit, int batchSize, String afterId) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.pit = pit;
+            this.batchSize = batchSize;
+            this.afterId = afterId;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RawTextES> action) {
+            if (!batch.hasNext() && !exhausted) {
+                readBatch();
+            }
+            if (!batch.hasNext()) {
+                return false;
+            }
+            RawTextES rawTextES = new RawTextES(batch.next());
+            afterId = rawTextES.getId();
+            action.accept(rawTextES);
+            return true;
+        }
+
+        private void readBatch() {
+            byte[] query = queries.searchAllAfter(afterId, batchSize, pit, cursorKeepAlive);
+            RawTextESSearchResult result = search(pitSearchUrl, query);
+            if (result.getPitId() != null) {
+                pit = result.getPitId();
+            }
+            exhausted = result.getHits().size() < batchSize;
+            batch = result.getHits().iterator();
+        }
+
+        private void close() {
+            closePointInTime(pit);
+        }
+
+    }
+
+    private static final class SearchCursor {
+
+        private final String pit;
+        private final List<Object> after;
+
+        private SearchCursor(String pit, List<Object> after) {
+            this.pit = pit;
+            this.after = after;
+        }
+
     }
 
 }
@@ -0,0 +1,276 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESSearchResult;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a raw text search response token by token, creating one {@link RawTextESComposite} per hit without binding
+ * the intermediate hit wrappers. Fields that are not used by the application are skipped without being materialized.
+ */
+public class RawTextESSearchResponseExtractor implements ResponseExtractor<RawTextESSearchResult> {
+
+    private final JsonFactory jsonFactory;
+    private final DateTimeFormatter dateTimeFormatter;
+
+    public RawTextESSearchResponseExtractor(JsonFactory jsonFactory, DateTimeFormatter dateTimeFormatter) {
+        this.jsonFactory = jsonFactory;
+        this.dateTimeFormatter = dateTimeFormatter;
+    }
+
+    @Override
+    public RawTextESSearchResult extractData(ClientHttpResponse response) throws IOException {
+        return read(response.getBody());
+    }
+
+    public RawTextESSearchResult read(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            parser.nextToken();
+            return read(parser);
+        }
+    }
+
+    /**
+     * Reads a search response object, starting with the parser on its START_OBJECT token
+     */
+    public RawTextESSearchResult read(JsonParser parser) throws IOException {
+        RawTextESSearchResult result = new RawTextESSearchResult();
+        expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "took":
+                    result.setTook(parser.getLongValue());
+                    break;
+                case "pit_id":
+                    result.setPitId(parser.getText());
+                    break;
+                case "_shards":
+                    readShards(parser, result);
+                    break;
+                case "hits":
+                    readHits(parser, result);
+                    break;
+                case "status":
+                    result.setStatus(parser.getIntValue());
+                    break;
+                case "error":
+                    result.setError(readError(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a multi search response into one result per search, in the order of the searches. A failed search is
+     * read into a result holding its status and error.
+     */
+    public List<RawTextESSearchResult> readMultiSearch(InputStream body) throws IOException {
+        List<RawTextESSearchResult> results = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            parser.nextToken();
+            expect(parser, JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("responses".equals(field)) {
+                    expect(parser, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        results.add(read(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return results;
+    }
+
+    // the type and reason of an error object, or the error itself if it is a string
+    private String readError(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            String error = parser.getText();
+            parser.skipChildren();
+            return error;
+        }
+        String type = null;
+        String reason = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("type".equals(field)) {
+                type = parser.getText();
+            } else if ("reason".equals(field)) {
+                reason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return type == null ? String.valueOf(reason) : type + ": " + reason;
+    }
+
+    private void readShards(JsonParser parser, RawTextESSearchResult result) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("failed".equals(field)) {
+                result.setFailedShards(parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readHits(JsonParser parser, RawTextESSearchResult result) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("total".equals(field) && token == JsonToken.START_OBJECT) {
+                result.setTotalHitsTracked(true);
+                readTotal(parser, result);
+            } else if ("total".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                result.setTotalHitsTracked(true);
+                result.setTotalHits(parser.getLongValue());
+            } else if ("hits".equals(field)) {
+                expect(parser, JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readHit(parser, result);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readTotal(JsonParser parser, RawTextESSearchResult result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("value".equals(field)) {
+                result.setTotalHits(parser.getLongValue());
+            } else if ("relation".equals(field)) {
+                result.setTotalHitsRelation(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readHit(JsonParser parser, RawTextESSearchResult result) throws IOException {
+        RawTextESComposite composite = new RawTextESComposite();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "_source":
+                    readSource(parser, composite);
+                    break;
+                case "highlight":
+                    readHighlight(parser, composite);
+                    break;
+                case "sort":
+                    result.setLastSort(readSort(parser));
+                    break;
+                case "_seq_no":
+                    composite.setSeqNo(parser.getLongValue());
+                    break;
+                case "_primary_term":
+                    composite.setPrimaryTerm(parser.getLongValue());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        result.getHits().add(composite);
+    }
+
+    private void readSource(JsonParser parser, RawTextESComposite composite) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    composite.setId(parser.getText());
+                    break;
+                case "textContent":
+                    composite.setTextContent(parser.getText());
+                    break;
+                case "createDateTime":
+                    composite.setCreateDateTime(LocalDateTime.parse(parser.getText(), dateTimeFormatter));
+                    break;
+                case "updateDateTime":
+                    composite.setUpdateDateTime(LocalDateTime.parse(parser.getText(), dateTimeFormatter));
+                    break;
+                case "version":
+                    composite.setVersion(parser.getLongValue());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private void readHighlight(JsonParser parser, RawTextESComposite composite) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("textContent".equals(field)) {
+                expect(parser, JsonToken.START_ARRAY);
+                List<String> highlights = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                    highlights.add(parser.getText());
+                }
+                composite.setHighlights(highlights);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private List<Object> readSort(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<Object> sort = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                sort.add(parser.getLongValue());
+            } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                sort.add(parser.getDoubleValue());
+            } else if (token == JsonToken.VALUE_NULL) {
+                sort.add(null);
+            } else {
+                sort.add(parser.getText());
+            }
+        }
+        return sort;
+    }
+
+    private void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.currentToken() != token) {
+            throw new IOException(String.format("Expected %s in ElasticSearch response but found %s", token, parser.currentToken()));
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.matthewjohnson42.memex.data.config.RawTextElasticConfiguration;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESDoc;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESDocs;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.RawTextESSearchResult;
+import com.matthewjohnson42.memex.data.repository.SearchPage;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link RawTextESRestTemplate}.
+ * Shares the query builder of the rest template, which creates the index and follows its migrations, its index
+ * manager, so that a migration copies writes made through this client, and its write generation, so that search
+ * caches over the rest template see them.
+ *
+ * @see com.matthewjohnson42.memex.data.repository.ReactiveRepository
+ */
+@Profile("enableelasticrepositories")
+@Component
+public class RawTextESWebClient extends ElasticWebClient<String, RawTextES> {
+
+    private final RawTextESQueries queries;
+    private final RawTextESSearchResponseExtractor searchResponseExtractor;
+    private final boolean searchTextContent;
+
+    public RawTextESWebClient(RawTextElasticConfiguration config, RawTextESRestTemplate restTemplate) {
+        super(config);
+        this.queries = restTemplate.getQueries();
+        this.writeGeneration = restTemplate.getWriteGeneration();
+        this.indexManager = restTemplate.getIndexManager();
+        this.searchTextContent = restTemplate.isSearchTextContent();
+        this.searchResponseExtractor = new RawTextESSearchResponseExtractor(objectMapper.getFactory(), dateTimeFormatter);
+    }
+
+    public Mono<RawTextES> findById(String id) {
+        return search(entitySearchUrl, queries.searchById(id))
+                .flatMap(result -> result.getHits().isEmpty()
+                        ? Mono.empty()
+                        : Mono.just(new RawTextES(result.getHits().get(0))));
+    }
+
+    /**
+     * @see RawTextESRestTemplate#patch(String, RawTextES, Long)
+     */
+    public Mono<RawTextES> patch(String id, RawTextES changes, Long expectedVersion) {
+        return Mono.fromCallable(() -> RawTextESRestTemplate.patchBody(objectMapper, changes, expectedVersion))
+                .flatMap(body -> write(id, webClient.post()
+                        .uri(entityUpdateUrl + RawTextESRestTemplate.patchParameters(changes), id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(body)
+                        .retrieve()
+                        .bodyToMono(JsonNode.class)))
+                .map(response -> RawTextESRestTemplate.readPatched(objectMapper, response, id, expectedVersion))
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                .onErrorMap(WebClientResponseException.Conflict.class, e -> new OptimisticLockingFailureException(
+                        String.format("Raw text with id %s was modified since it was read", id), e));
+    }
+
+    public Flux<RawTextES> findAllById(Iterable<String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        if (idList.isEmpty()) {
+            return Flux.empty();
+        }
+        return webClient.post()
+                .uri(entityMultiGetUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Collections.singletonMap("ids", idList))
+                .retrieve()
+                .bodyToMono(RawTextESDocs.class)
+                .flatMapIterable(RawTextESDocs::getDocs)
+                .filter(RawTextESDoc::isFound)
+                .map(RawTextESDoc::toEntity);
+    }
+
+    public Mono<SearchPage<RawTextESComposite>> getPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            Pageable pageable) {
+        return getPageFromSearchString(searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate,
+                pageable, TotalHitsPolicy.DEFAULT);
+    }
+
+    /**
+     * @see RawTextESRestTemplate#getPageFromSearchString(String, LocalDateTime, LocalDateTime, LocalDateTime, LocalDateTime, Pageable, TotalHitsPolicy)
+     */
+    public Mono<SearchPage<RawTextESComposite>> getPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            Pageable pageable,
+            TotalHitsPolicy totalHitsPolicy) {
+        return Mono.fromCallable(() -> new RawTextSearchQuery(searchString)
+                        .setCreateDateRange(startCreateDate, endCreateDate)
+                        .setUpdateDateRange(startUpdateDate, endUpdateDate)
+                        .setPage(pageable)
+                        .setTextContent(searchTextContent)
+                        .setTotalHitsPolicy(totalHitsPolicy))
+                .flatMap(this::search)
+                .map(result -> result.toPage(pageable));
+    }
+
+    public Mono<RawTextESSearchResult> search(RawTextSearchQuery query) {
+        return Mono.fromCallable(() -> queries.search(query))
+                .flatMap(body -> search(query.getPit() == null ? entitySearchUrl : pitSearchUrl, body));
+    }
+
+    /**
+     * Returns the raw text matching a type ahead prefix, without text content or highlights
+     *
+     * @see RawTextESQueries#suggest(String, int)
+     */
+    public Mono<List<RawTextESComposite>> suggest(String prefix, int size) {
+        return Mono.fromCallable(() -> queries.suggest(prefix, size))
+                .flatMap(body -> search(entitySearchUrl, body))
+                .map(RawTextESSearchResult::getHits);
+    }
+
+    /**
+     * Emits the suggestions for each prefix as it is typed. A new prefix cancels the request for the previous one,
+     * so a superseded request stops waiting on ElasticSearch and its response is never read. Blank prefixes emit an
+     * empty list without a request, as does a failed request, so that one failure does not end the stream.
+     */
+    public Flux<List<RawTextESComposite>> suggest(Flux<String> prefixes, int size) {
+        return prefixes
+                .map(String::trim)
+                .distinctUntilChanged()
+                .switchMap(prefix -> prefix.isEmpty()
+                        ? Mono.just(Collections.<RawTextESComposite>emptyList())
+                        : suggest(prefix, size).onErrorResume(e -> {
+                            logger.warn("Suggestions for prefix could not be read", e);
+                            return Mono.just(Collections.emptyList());
+                        }));
+    }
+
+    private Mono<RawTextESSearchResult> search(String url, byte[] query) {
+        return DataBufferUtils.join(webClient.post()
+                        .uri(url)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(query)
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class))
+                .map(buffer -> {
+                    try (InputStream body = buffer.asInputStream(true)) {
+                        return searchResponseExtractor.read(body);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .doOnNext(result -> metrics.recordSearch(entityName, result.getTook(), result.getFailedShards(), result.getTotalHits()));
+    }
+
+}
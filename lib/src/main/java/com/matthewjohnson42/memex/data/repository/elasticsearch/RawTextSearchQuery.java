@@ -0,0 +1,161 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A fuzzy text search over raw text, optionally filtered by create and update date.
+ * Unset date bounds are left out of the query rather than sent as open bounds.
+ * Pages are read either by offset, through from and size, or through a point in time and search_after values.
+ * Hits include their text content unless it is excluded, in which case only the highlights show the matched text.
+ *
+ * @see RawTextESQueries#search(RawTextSearchQuery)
+ */
+public class RawTextSearchQuery {
+
+    private final String searchString;
+    private Integer fuzziness = 1;
+    private LocalDateTime startCreateDate;
+    private LocalDateTime endCreateDate;
+    private LocalDateTime startUpdateDate;
+    private LocalDateTime endUpdateDate;
+    private Integer from;
+    private int size = 10;
+    private String pit;
+    private String keepAlive;
+    private List<Object> searchAfter;
+    private boolean highlight = true;
+    private boolean textContent = true;
+    private TotalHitsPolicy totalHitsPolicy;
+
+    public RawTextSearchQuery(String searchString) {
+        this.searchString = searchString;
+    }
+
+    public String getSearchString() {
+        return searchString;
+    }
+
+    public Integer getFuzziness() {
+        return fuzziness;
+    }
+
+    // null for an exact match
+    public RawTextSearchQuery setFuzziness(Integer fuzziness) {
+        this.fuzziness = fuzziness;
+        return this;
+    }
+
+    public LocalDateTime getStartCreateDate() {
+        return startCreateDate;
+    }
+
+    public LocalDateTime getEndCreateDate() {
+        return endCreateDate;
+    }
+
+    public RawTextSearchQuery setCreateDateRange(LocalDateTime startCreateDate, LocalDateTime endCreateDate) {
+        this.startCreateDate = startCreateDate;
+        this.endCreateDate = endCreateDate;
+        return this;
+    }
+
+    public LocalDateTime getStartUpdateDate() {
+        return startUpdateDate;
+    }
+
+    public LocalDateTime getEndUpdateDate() {
+        return endUpdateDate;
+    }
+
+    public RawTextSearchQuery setUpdateDateRange(LocalDateTime startUpdateDate, LocalDateTime endUpdateDate) {
+        this.startUpdateDate = startUpdateDate;
+        this.endUpdateDate = endUpdateDate;
+        return this;
+    }
+
+    public Integer getFrom() {
+        return from;
+    }
+
+    public RawTextSearchQuery setFrom(Integer from) {
+        this.from = from;
+        return this;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public RawTextSearchQuery setSize(int size) {
+        this.size = size;
+        return this;
+    }
+
+    public RawTextSearchQuery setPage(Pageable pageable) {
+        this.from = pageable.getPageNumber() * pageable.getPageSize();
+        this.size = pageable.getPageSize();
+        return this;
+    }
+
+    public String getPit() {
+        return pit;
+    }
+
+    public String getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Searches through a point in time. Results are then sorted on id after create date, giving search_after a
+     * unique sort position for every hit.
+     */
+    public RawTextSearchQuery setPit(String pit, String keepAlive) {
+        this.pit = pit;
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public RawTextSearchQuery setSearchAfter(List<Object> searchAfter) {
+        this.searchAfter = searchAfter;
+        return this;
+    }
+
+    public boolean isHighlight() {
+        return highlight;
+    }
+
+    public RawTextSearchQuery setHighlight(boolean highlight) {
+        this.highlight = highlight;
+        return this;
+    }
+
+    public TotalHitsPolicy getTotalHitsPolicy() {
+        return totalHitsPolicy;
+    }
+
+    // null for the ElasticSearch default
+    public RawTextSearchQuery setTotalHitsPolicy(TotalHitsPolicy totalHitsPolicy) {
+        this.totalHitsPolicy = totalHitsPolicy;
+        return this;
+    }
+
+    public boolean isTextContent() {
+        return textContent;
+    }
+
+    /**
+     * Leaves the text content out of the returned hits, which then carry only their metadata and highlights
+     */
+    public RawTextSearchQuery setTextContent(boolean textContent) {
+        this.textContent = textContent;
+        return this;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.matthewjohnson42.memex.data.repository.elasticsearch;
+
+import org.springframework.util.Assert;
+
+/**
+ * How far a search counts its matches, sent as track_total_hits. Counting stops at the cap, after which the total is
+ * reported as a lower bound. Without counting, the page of results is all that a search returns.
+ *
+ * @see com.matthewjohnson42.memex.data.repository.SearchPage
+ */
+public final class TotalHitsPolicy {
+
+    public static final TotalHitsPolicy EXACT = new TotalHitsPolicy(Integer.MAX_VALUE);
+    public static final TotalHitsPolicy NONE = new TotalHitsPolicy(0);
+
+    // the ElasticSearch default when track_total_hits is not set
+    public static final TotalHitsPolicy DEFAULT = cappedAt(10000);
+
+    private final int cap;
+
+    private TotalHitsPolicy(int cap) {
+        this.cap = cap;
+    }
+
+    public static TotalHitsPolicy cappedAt(int cap) {
+        Assert.isTrue(cap > 0, "Total hits cap must be positive");
+        return new TotalHitsPolicy(cap);
+    }
+
+    public boolean isExact() {
+        return cap == Integer.MAX_VALUE;
+    }
+
+    public boolean isCounted() {
+        return cap > 0;
+    }
+
+    public int getCap() {
+        return cap;
+    }
+
+}
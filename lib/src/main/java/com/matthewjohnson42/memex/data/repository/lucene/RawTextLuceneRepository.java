@@ -0,0 +1,609 @@
+package com.matthewjohnson42.memex.data.repository.lucene;
+
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextESComposite;
+import com.matthewjohnson42.memex.data.repository.RawTextSearchRepository;
+import com.matthewjohnson42.memex.data.repository.SearchPage;
+import com.matthewjohnson42.memex.data.repository.WriteGeneration;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.Passage;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.BreakIterator;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Raw text repository on an embedded Lucene index in a local, memory mapped directory. Used in place of
+ * {@link com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESRestTemplate} on a single node.
+ * Searches go through near-real-time readers refreshed in the background, so like ElasticSearch they see writes
+ * after a short delay. Reads by id wait for the latest write to be visible. Commits to disk are periodic and on
+ * shutdown.
+ */
+@Profile("enablelucenerepositories")
+@Component
+public class RawTextLuceneRepository implements RawTextSearchRepository, DisposableBean {
+
+    private static final String ID = "id";
+    private static final String TEXT_CONTENT = "textContent";
+    private static final String CREATE_DATE_TIME = "createDateTime";
+    private static final String UPDATE_DATE_TIME = "updateDateTime";
+    private static final String VERSION = "version";
+    private static final Set<String> METADATA_FIELDS = new HashSet<>(Arrays.asList(ID, CREATE_DATE_TIME, UPDATE_DATE_TIME, VERSION));
+
+    private static final int WRITE_LOCK_STRIPES = 64;
+
+    private static final FieldType TEXT_CONTENT_TYPE = new FieldType();
+
+    static {
+        // offsets are indexed so that highlighting does not re-analyze the text
+        TEXT_CONTENT_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        TEXT_CONTENT_TYPE.setTokenized(true);
+        TEXT_CONTENT_TYPE.setStored(true);
+        TEXT_CONTENT_TYPE.freeze();
+    }
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final int fuzziness = 1;
+    private final int highlightFragments = 3;
+    private final int highlightFragmentSize = 150;
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final MMapDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+    private final ScheduledExecutorService committer;
+    private final AtomicLong lastWrite = new AtomicLong(-1);
+    private final WriteGeneration writeGeneration = new WriteGeneration();
+    // writes to one id are serialized, so that no other write to the id lands between the read and write of a patch
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+
+    public RawTextLuceneRepository(@Value("${db.lucene.path:lucene}") String path,
+                                   @Value("${db.lucene.maxstalems:25}") long maxStaleMillis,
+                                   @Value("${db.lucene.commitintervalms:5000}") long commitIntervalMillis) throws IOException {
+        for (int i = 0; i < WRITE_LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        Path indexPath = Paths.get(path, "rawtext");
+        Files.createDirectories(indexPath);
+        logger.info("Opening Lucene index at '{}'", indexPath.toAbsolutePath());
+        directory = new MMapDirectory(indexPath);
+        writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        searcherManager = new SearcherManager(writer, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(writer, searcherManager, 1.0, maxStaleMillis / 1000.0);
+        reopenThread.setName("rawtext-lucene-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rawtext-lucene-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::commit, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        committer.shutdown();
+        reopenThread.close();
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    @Override
+    public RawTextES save(RawTextES rawTextES) {
+        List<ReentrantLock> locked = lockIds(Collections.singletonList(rawTextES.getId()));
+        try {
+            recordWrite(writer.updateDocument(new Term(ID, rawTextES.getId()), toDocument(rawTextES)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlock(locked);
+        }
+        return rawTextES;
+    }
+
+    @Override
+    public Optional<RawTextES> findById(String id) {
+        return findOne(new TermQuery(new Term(ID, id)), null);
+    }
+
+    @Override
+    public Optional<RawTextES> findMetadataById(String id) {
+        return findOne(new TermQuery(new Term(ID, id)), METADATA_FIELDS);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return search(true, searcher -> searcher.count(new TermQuery(new Term(ID, id))) > 0);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        List<ReentrantLock> locked = lockIds(Collections.singletonList(id));
+        try {
+            recordWrite(writer.deleteDocuments(new Term(ID, id)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public Optional<RawTextES> patch(String id, RawTextES changes, Long expectedVersion) {
+        List<ReentrantLock> locked = lockIds(Collections.singletonList(id));
+        try {
+            Optional<RawTextES> stored = findById(id);
+            if (!stored.isPresent()) {
+                return Optional.empty();
+            }
+            RawTextES patched = stored.get();
+            long version = patched.getVersion() == null ? 0 : patched.getVersion();
+            if (expectedVersion != null && expectedVersion != version) {
+                throw new OptimisticLockingFailureException(String.format("Raw text with id %s is no longer at version %d", id, expectedVersion));
+            }
+            if (changes.getTextContent() != null) {
+                patched.setTextContent(changes.getTextContent());
+            }
+            if (changes.getCreateDateTime() != null) {
+                patched.setCreateDateTime(changes.getCreateDateTime());
+            }
+            if (changes.getUpdateDateTime() != null) {
+                patched.setUpdateDateTime(changes.getUpdateDateTime());
+            }
+            patched.setVersion(version + 1);
+            return Optional.of(save(patched));
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public <S extends RawTextES> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        for (S entity : entities) {
+            save(entity);
+            saved.add(entity);
+        }
+        return saved;
+    }
+
+    @Override
+    public Iterable<RawTextES> findAllById(Iterable<String> ids) {
+        List<BytesRef> terms = new ArrayList<>();
+        ids.forEach(id -> terms.add(new BytesRef(id)));
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return search(true, searcher -> {
+            TopDocs topDocs = searcher.search(new TermInSetQuery(ID, terms), terms.size());
+            List<RawTextES> found = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                found.add(toEntity(searcher.doc(scoreDoc.doc), new RawTextES()));
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        List<String> idList = new ArrayList<>();
+        ids.forEach(idList::add);
+        if (idList.isEmpty()) {
+            return;
+        }
+        List<Term> terms = new ArrayList<>(idList.size());
+        idList.forEach(id -> terms.add(new Term(ID, id)));
+        List<ReentrantLock> locked = lockIds(idList);
+        try {
+            recordWrite(writer.deleteDocuments(terms.toArray(new Term[0])));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    // locks the stripes of the ids in stripe order, so that writes locking several ids cannot deadlock
+    private List<ReentrantLock> lockIds(Collection<String> ids) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String id : ids) {
+            stripes.add(Math.floorMod(id.hashCode(), WRITE_LOCK_STRIPES));
+        }
+        List<ReentrantLock> locked = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            writeLocks[stripe].lock();
+            locked.add(writeLocks[stripe]);
+        }
+        return locked;
+    }
+
+    private static void unlock(List<ReentrantLock> locked) {
+        for (ReentrantLock lock : locked) {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public WriteGeneration getWriteGeneration() {
+        return writeGeneration;
+    }
+
+    /**
+     * Streams the index in id order, one search per batch starting after the last id read
+     */
+    @Override
+    public Stream<RawTextES> streamAll(int batchSize, String afterId) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        return StreamSupport.stream(new ExportSpliterator(batchSize, afterId), false);
+    }
+
+    @Override
+    public Page<RawTextESComposite> getPageFromSearchString(
+            String searchString,
+            LocalDateTime startCreateDate,
+            LocalDateTime endCreateDate,
+            LocalDateTime startUpdateDate,
+            LocalDateTime endUpdateDate,
+            Pageable pageable) {
+        Assert.hasLength(searchString, "Search string cannot be null or the empty string");
+        Assert.notNull(pageable, "Pageable cannot be null");
+        Query query = buildSearchQuery(searchString, startCreateDate, endCreateDate, startUpdateDate, endUpdateDate);
+        int from = pageable.getPageNumber() * pageable.getPageSize();
+        return search(false, searcher -> {
+            TopFieldDocs topDocs = searcher.search(query, from + pageable.getPageSize(),
+                    new Sort(new SortField(CREATE_DATE_TIME, SortField.Type.LONG, true)));
+            ScoreDoc[] page = from >= topDocs.scoreDocs.length
+                    ? new ScoreDoc[0]
+                    : Arrays.copyOfRange(topDocs.scoreDocs, from, topDocs.scoreDocs.length);
+            Object[] highlights = highlight(searcher, query, page);
+            List<RawTextESComposite> hits = new ArrayList<>(page.length);
+            for (int i = 0; i < page.length; i++) {
+                RawTextESComposite composite = toEntity(searcher.doc(page[i].doc), new RawTextESComposite());
+                @SuppressWarnings("unchecked")
+                List<String> fragments = (List<String>) highlights[i];
+                composite.setHighlights(fragments == null || fragments.isEmpty() ? null : fragments);
+                hits.add(composite);
+            }
+            return new SearchPage<>(hits, pageable, topDocs.totalHits.value,
+                    topDocs.totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
+        });
+    }
+
+    /**
+     * Matches any term of the analyzed search string within the fuzziness, as the ElasticSearch match query does.
+     * Repeated terms are matched once, and terms beyond the maximum clause count of a boolean query are ignored.
+     */
+    private Query buildSearchQuery(String searchString,
+                                   LocalDateTime startCreateDate,
+                                   LocalDateTime endCreateDate,
+                                   LocalDateTime startUpdateDate,
+                                   LocalDateTime endUpdateDate) {
+        Set<String> terms = new LinkedHashSet<>();
+        int maxTerms = BooleanQuery.getMaxClauseCount();
+        try (TokenStream tokens = analyzer.tokenStream(TEXT_CONTENT, searchString)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken() && terms.size() < maxTerms) {
+                terms.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BooleanQuery.Builder match = new BooleanQuery.Builder();
+        for (String term : terms) {
+            match.add(new FuzzyQuery(new Term(TEXT_CONTENT, term), fuzziness), BooleanClause.Occur.SHOULD);
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        query.add(terms.isEmpty() ? new MatchNoDocsQuery() : match.build(), BooleanClause.Occur.MUST);
+        if (startCreateDate != null || endCreateDate != null) {
+            query.add(dateRange(CREATE_DATE_TIME, startCreateDate, endCreateDate), BooleanClause.Occur.FILTER);
+        }
+        if (startUpdateDate != null || endUpdateDate != null) {
+            query.add(dateRange(UPDATE_DATE_TIME, startUpdateDate, endUpdateDate), BooleanClause.Occur.FILTER);
+        }
+        return query.build();
+    }
+
+    private Query dateRange(String field, LocalDateTime start, LocalDateTime end) {
+        return LongPoint.newRangeQuery(field,
+                start == null ? Long.MIN_VALUE : toMillis(start),
+                end == null ? Long.MAX_VALUE : toMillis(end));
+    }
+
+    private Object[] highlight(IndexSearcher searcher, Query query, ScoreDoc[] page) throws IOException {
+        if (page.length == 0) {
+            return new Object[0];
+        }
+        int[] docIds = new int[page.length];
+        for (int i = 0; i < page.length; i++) {
+            docIds[i] = page[i].doc;
+        }
+        return new FragmentHighlighter(searcher).highlight(query, docIds);
+    }
+
+    private Optional<RawTextES> findOne(Query query, Set<String> fields) {
+        return search(true, searcher -> {
+            TopDocs topDocs = searcher.search(query, 1);
+            if (topDocs.scoreDocs.length == 0) {
+                return Optional.empty();
+            }
+            Document document = fields == null ? searcher.doc(topDocs.scoreDocs[0].doc) : searcher.doc(topDocs.scoreDocs[0].doc, fields);
+            return Optional.of(toEntity(document, new RawTextES()));
+        });
+    }
+
+    /**
+     * Runs the search on an acquired searcher
+     *
+     * @param latest wait until the last write is visible, for reads by id
+     */
+    private <T> T search(boolean latest, SearcherFunction<T> function) {
+        try {
+            if (latest && lastWrite.get() >= 0) {
+                reopenThread.waitForGeneration(lastWrite.get());
+            }
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                return function.apply(searcher);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the Lucene index to refresh", e);
+        }
+    }
+
+    private void recordWrite(long sequenceNumber) {
+        lastWrite.accumulateAndGet(sequenceNumber, Math::max);
+        writeGeneration.written();
+    }
+
+    private void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error when committing the raw text Lucene index", e);
+        }
+    }
+
+    private Document toDocument(RawTextES rawTextES) {
+        Document document = new Document();
+        document.add(new StringField(ID, rawTextES.getId(), Field.Store.YES));
+        document.add(new SortedDocValuesField(ID, new BytesRef(rawTextES.getId())));
+        if (rawTextES.getTextContent() != null) {
+            document.add(new Field(TEXT_CONTENT, rawTextES.getTextContent(), TEXT_CONTENT_TYPE));
+        }
+        addDate(document, CREATE_DATE_TIME, rawTextES.getCreateDateTime());
+        addDate(document, UPDATE_DATE_TIME, rawTextES.getUpdateDateTime());
+        if (rawTextES.getVersion() != null) {
+            document.add(new StoredField(VERSION, rawTextES.getVersion()));
+        }
+        return document;
+    }
+
+    private void addDate(Document document, String field, LocalDateTime dateTime) {
+        if (dateTime != null) {
+            long millis = toMillis(dateTime);
+            document.add(new LongPoint(field, millis));
+            document.add(new NumericDocValuesField(field, millis));
+            document.add(new StoredField(field, millis));
+        }
+    }
+
+    private <E extends RawTextES> E toEntity(Document document, E entity) {
+        entity.setId(document.get(ID));
+        entity.setTextContent(document.get(TEXT_CONTENT));
+        entity.setCreateDateTime(toDateTime(document.getField(CREATE_DATE_TIME)));
+        entity.setUpdateDateTime(toDateTime(document.getField(UPDATE_DATE_TIME)));
+        IndexableField version = document.getField(VERSION);
+        entity.setVersion(version == null ? null : version.numericValue().longValue());
+        return entity;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(IndexableField field) {
+        return field == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(field.numericValue().longValue()), ZoneOffset.UTC);
+    }
+
+    @FunctionalInterface
+    private interface SearcherFunction<T> {
+
+        T apply(IndexSearcher searcher) throws IOException;
+
+    }
+
+    /**
+     * Highlights the text content of each hit as separate fragments of about the configured size
+     */
+    private final class FragmentHighlighter extends UnifiedHighlighter {
+
+        private FragmentHighlighter(IndexSearcher searcher) {
+            super(searcher, analyzer);
+            setHandleMultiTermQuery(true);
+            setMaxLength(Integer.MAX_VALUE - 1);
+        }
+
+        private Object[] highlight(Query query, int[] docIds) throws IOException {
+            return highlightFieldsAsObjects(new String[]{TEXT_CONTENT}, query, docIds, new int[]{highlightFragments}).get(TEXT_CONTENT);
+        }
+
+        @Override
+        protected PassageFormatter getFormatter(String field) {
+            return new FragmentFormatter();
+        }
+
+        @Override
+        protected BreakIterator getBreakIterator(String field) {
+            // a fragment alignment of 0 starts each fragment at its first match, as the two argument factory did
+            return LengthGoalBreakIterator.createClosestToLength(BreakIterator.getSentenceInstance(Locale.ROOT), highlightFragmentSize, 0f);
+        }
+
+    }
+
+    /**
+     * Formats each passage as a separate fragment with the highlight tags used by the ElasticSearch queries
+     */
+    private final class FragmentFormatter extends PassageFormatter {
+
+        @Override
+        public Object format(Passage[] passages, String content) {
+            List<String> fragments = new ArrayList<>(passages.length);
+            for (Passage passage : passages) {
+                StringBuilder fragment = new StringBuilder();
+                int position = passage.getStartOffset();
+                for (int i = 0; i < passage.getNumMatches(); i++) {
+                    int matchStart = passage.getMatchStarts()[i];
+                    int matchEnd = passage.getMatchEnds()[i];
+                    if (matchEnd <= position) {
+                        continue;
+                    }
+                    fragment.append(content, position, Math.max(position, matchStart));
+                    fragment.append("<b><i>").append(content, Math.max(position, matchStart), matchEnd).append("</b></i>");
+                    position = matchEnd;
+                }
+                if (position < passage.getEndOffset()) {
+                    fragment.append(content, position, passage.getEndOffset());
+                }
+                fragments.add(fragment.toString().trim());
+            }
+            return fragments;
+        }
+
+    }
+
+    /**
+     * Reads the next batch of an export only once the previous batch has been consumed
+     */
+    private final class ExportSpliterator extends Spliterators.AbstractSpliterator<RawTextES> {
+
+        private final int batchSize;
+        private String afterId;
+        private Iterator<RawTextES> batch = Collections.emptyIterator();
+        private boolean exhausted = false;
+
+        private ExportSpliterator(int batchSize, String afterId) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.batchSize = batchSize;
+            this.afterId = afterId;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RawTextES> action) {
+            if (!batch.hasNext() && !exhausted) {
+                readBatch();
+            }
+            if (!batch.hasNext()) {
+                return false;
+            }
+            RawTextES rawTextES = batch.next();
+            afterId = rawTextES.getId();
+            action.accept(rawTextES);
+            return true;
+        }
+
+        private void readBatch() {
+            Query query = TermRangeQuery.newStringRange(ID, afterId, null, false, true);
+            List<RawTextES> read = search(false, searcher -> {
+                TopFieldDocs topDocs = searcher.search(query, batchSize, new Sort(new SortField(ID, SortField.Type.STRING)));
+                List<RawTextES> entities = new ArrayList<>(topDocs.scoreDocs.length);
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    entities.add(toEntity(searcher.doc(scoreDoc.doc), new RawTextES()));
+                }
+                return entities;
+            });
+            exhausted = read.size() < batchSize;
+            batch = read.iterator();
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.IndexOutboxEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Data access object for the Mongo collection of pending ElasticSearch index operations
+ */
+public interface IndexOutboxMongoRepo extends MongoRepository<IndexOutboxEntry, String> {
+
+    public List<IndexOutboxEntry> findByEntityNameAndDeadLetterFalseAndNextAttemptDateTimeBefore(String entityName, LocalDateTime nextAttemptDateTime, Pageable pageable);
+
+    public List<IndexOutboxEntry> findByEntityNameAndDeadLetterTrue(String entityName, Pageable pageable);
+
+}
@@ -0,0 +1,151 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.converter.TextContentCodec;
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores raw text content too large for a Mongo document in the "rawTextContent" GridFS bucket.
+ * Content is copied between readers and the bucket through a fixed size buffer, so memory use does not depend on
+ * the size of the text. A chunked entity references its content by file id and has no inline text content.
+ *
+ * @see RawTextMongo#getTextContentFileId()
+ */
+@Profile("enablemongorepositories")
+@Component
+public class RawTextContentStore {
+
+    public static final String BUCKET_NAME = "rawTextContent";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final GridFSBucket bucket;
+    private final TextContentCodec codec;
+
+    // text longer than this is chunked when saved, the UTF-8 encoding must stay below the 16 MB document limit
+    @Value("${db.mongo.chunking.minchars:4000000}")
+    private int minChars;
+
+    @Value("${db.mongo.chunking.chunksizebytes:261120}")
+    private int chunkSizeBytes;
+
+    @Value("${db.mongo.chunking.buffersize:8192}")
+    private int bufferSize;
+
+    public RawTextContentStore(MongoDatabaseFactory databaseFactory, TextContentCodec codec) {
+        this.bucket = GridFSBuckets.create(databaseFactory.getMongoDatabase(), BUCKET_NAME);
+        this.codec = codec;
+    }
+
+    /**
+     * Writes the content to the bucket and references it from the entity, replacing any inline text content.
+     * The entity itself is not saved.
+     */
+    public RawTextMongo store(RawTextMongo entity, Reader content) {
+        GridFSUploadOptions options = new GridFSUploadOptions()
+                .chunkSizeBytes(chunkSizeBytes)
+                .metadata(new Document("entityId", entity.getId()));
+        GridFSUploadStream uploadStream = bucket.openUploadStream(String.valueOf(entity.getId()), options);
+        long length = 0;
+        try {
+            Writer writer = new OutputStreamWriter(uploadStream, StandardCharsets.UTF_8);
+            char[] buffer = new char[bufferSize];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                writer.write(buffer, 0, read);
+                length += read;
+            }
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            uploadStream.abort();
+            if (e instanceof IOException) {
+                throw new UncheckedIOException((IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+        entity.setTextContent(null);
+        entity.setCompressedTextContent(null);
+        entity.setTextContentFileId(uploadStream.getObjectId().toHexString());
+        entity.setTextContentLength(length);
+        return entity;
+    }
+
+    /**
+     * Moves inline text content longer than the chunking threshold to the bucket
+     */
+    public RawTextMongo chunkIfOversized(RawTextMongo entity) {
+        String textContent = entity.getTextContent();
+        if (textContent != null && textContent.length() > minChars) {
+            logger.info("Storing text content of {} characters for id {} in chunks", textContent.length(), entity.getId());
+            return store(entity, new StringReader(textContent));
+        }
+        return entity;
+    }
+
+    /**
+     * @return the UTF-8 encoded text content of the entity, whether stored in chunks, compressed or inline
+     */
+    public InputStream open(RawTextMongo entity) {
+        if (entity.getTextContentFileId() != null) {
+            return bucket.openDownloadStream(new ObjectId(entity.getTextContentFileId()));
+        }
+        String textContent = entity.getCompressedTextContent() != null
+                ? codec.decode(entity.getCompressedTextContent())
+                : entity.getTextContent();
+        return new ByteArrayInputStream(textContent == null ? new byte[0] : textContent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Reader openReader(RawTextMongo entity) {
+        return new InputStreamReader(open(entity), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads at most the given number of characters from the start of the text content
+     */
+    public String readPrefix(RawTextMongo entity, int maxChars) {
+        StringBuilder prefix = new StringBuilder(Math.min(maxChars, bufferSize));
+        try (Reader reader = openReader(entity)) {
+            char[] buffer = new char[Math.min(maxChars, bufferSize)];
+            int read;
+            while (prefix.length() < maxChars
+                    && (read = reader.read(buffer, 0, Math.min(buffer.length, maxChars - prefix.length()))) != -1) {
+                prefix.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return prefix.toString();
+    }
+
+    public void delete(String fileId) {
+        try {
+            bucket.delete(new ObjectId(fileId));
+        } catch (MongoGridFSException e) {
+            logger.warn("Chunked text content with file id {} was already deleted", fileId);
+        }
+    }
+
+}
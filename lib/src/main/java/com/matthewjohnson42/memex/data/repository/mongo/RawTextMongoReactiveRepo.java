@@ -0,0 +1,11 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.repository.ReactiveRepository;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+/**
+ * Non-blocking data access object for the Mongo collection corresponding to the RawText entity described by RawTextMongo
+ */
+public interface RawTextMongoReactiveRepo extends ReactiveMongoRepository<RawTextMongo, String>, ReactiveRepository<RawTextMongo, String>, RawTextMongoReactiveRepoCustom {
+}
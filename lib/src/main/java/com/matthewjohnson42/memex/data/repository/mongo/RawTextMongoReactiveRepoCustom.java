@@ -0,0 +1,18 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import reactor.core.publisher.Mono;
+
+/**
+ * Operations of the non-blocking raw text Mongo repository implemented directly on ReactiveMongoTemplate
+ *
+ * @see RawTextMongoReactiveRepoCustomImpl
+ */
+public interface RawTextMongoReactiveRepoCustom {
+
+    /**
+     * Non-blocking counterpart of {@link RawTextMongoRepoCustom#patch(String, RawTextMongo, Long)}
+     */
+    public Mono<RawTextMongo> patch(String id, RawTextMongo changes, Long expectedVersion);
+
+}
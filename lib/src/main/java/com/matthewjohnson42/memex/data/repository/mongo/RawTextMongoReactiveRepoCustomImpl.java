@@ -0,0 +1,35 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+
+/**
+ * ReactiveMongoTemplate backed implementation of {@link RawTextMongoReactiveRepoCustom}.
+ * Builds the same query and update as {@link RawTextMongoRepoCustomImpl}.
+ */
+public class RawTextMongoReactiveRepoCustomImpl implements RawTextMongoReactiveRepoCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public RawTextMongoReactiveRepoCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<RawTextMongo> patch(String id, RawTextMongo changes, Long expectedVersion) {
+        return Mono.fromCallable(() -> RawTextMongoRepoCustomImpl.patchUpdate(mongoTemplate.getConverter(), changes))
+                .flatMap(update -> mongoTemplate.findAndModify(RawTextMongoRepoCustomImpl.patchQuery(id, expectedVersion), update,
+                        FindAndModifyOptions.options().returnNew(true), RawTextMongo.class))
+                .switchIfEmpty(Mono.defer(() -> expectedVersion == null
+                        ? Mono.empty()
+                        : mongoTemplate.exists(Query.query(Criteria.where("_id").is(id)), RawTextMongo.class)
+                                .flatMap(exists -> exists
+                                        ? Mono.error(RawTextMongoRepoCustomImpl.versionConflict(id, expectedVersion))
+                                        : Mono.empty())));
+    }
+
+}
@@ -5,7 +5,8 @@ import com.matthewjohnson42.memex.data.repository.Repository;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 /**
- * Data access object for the Mongo collection corresponding to the RawText entity described by RawTextMongo
+ * Data access object for the Mongo collection corresponding to the RawText entity described by RawTextMongo.
+ * Batch reads and deletes use the Spring Data implementations, which query with a single $in on the id.
  */
-public interface RawTextMongoRepo extends MongoRepository<RawTextMongo, String>, Repository<RawTextMongo, String> {
+public interface RawTextMongoRepo extends MongoRepository<RawTextMongo, String>, Repository<RawTextMongo, String>, RawTextMongoRepoCustom {
 }
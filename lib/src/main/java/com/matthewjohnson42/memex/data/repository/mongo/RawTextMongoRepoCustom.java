@@ -0,0 +1,38 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Operations of the raw text Mongo repository implemented directly on MongoTemplate
+ *
+ * @see RawTextMongoRepoCustomImpl
+ */
+public interface RawTextMongoRepoCustom {
+
+    /**
+     * Upserts all entities in a single unordered bulkWrite. Overrides the Spring Data implementation, which issues
+     * one save per entity when ids are assigned by the caller.
+     */
+    public <S extends RawTextMongo> List<S> saveAll(Iterable<S> entities);
+
+    /**
+     * Updates the entity with a single findAndModify, setting the non-null fields of the changes and incrementing
+     * the version. A missing version field is treated as version 0.
+     */
+    public Optional<RawTextMongo> patch(String id, RawTextMongo changes, Long expectedVersion);
+
+    /**
+     * Reads the entity with a projection excluding the text content
+     */
+    public Optional<RawTextMongo> findMetadataById(String id);
+
+    /**
+     * Streams the collection through a single Mongo cursor sorted on _id
+     */
+    public Stream<RawTextMongo> streamAll(int batchSize, String afterId);
+
+}
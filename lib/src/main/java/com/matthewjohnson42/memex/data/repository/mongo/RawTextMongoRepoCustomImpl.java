@@ -0,0 +1,119 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import org.bson.Document;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.StreamUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * MongoTemplate backed implementation of {@link RawTextMongoRepoCustom}
+ */
+public class RawTextMongoRepoCustomImpl implements RawTextMongoRepoCustom {
+
+    private static final Set<String> UNPATCHED_FIELDS = new HashSet<>(Arrays.asList("_id", "_class", "version"));
+    private static final List<List<String>> TEXT_CONTENT_FORMS = Arrays.asList(
+            Arrays.asList("textContent"),
+            Arrays.asList("compressedTextContent"),
+            Arrays.asList("textContentFileId", "textContentLength"));
+
+    private final MongoTemplate mongoTemplate;
+
+    public RawTextMongoRepoCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public <S extends RawTextMongo> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RawTextMongo.class);
+        for (S entity : entities) {
+            Query query = Query.query(Criteria.where("_id").is(entity.getId()));
+            bulkOperations.replaceOne(query, entity, FindAndReplaceOptions.options().upsert());
+            saved.add(entity);
+        }
+        if (!saved.isEmpty()) {
+            bulkOperations.execute();
+        }
+        return saved;
+    }
+
+    @Override
+    public Optional<RawTextMongo> patch(String id, RawTextMongo changes, Long expectedVersion) {
+        RawTextMongo patched = mongoTemplate.findAndModify(patchQuery(id, expectedVersion), patchUpdate(mongoTemplate.getConverter(), changes),
+                FindAndModifyOptions.options().returnNew(true), RawTextMongo.class);
+        if (patched == null && expectedVersion != null && mongoTemplate.exists(Query.query(Criteria.where("_id").is(id)), RawTextMongo.class)) {
+            throw versionConflict(id, expectedVersion);
+        }
+        return Optional.ofNullable(patched);
+    }
+
+    @Override
+    public Optional<RawTextMongo> findMetadataById(String id) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        query.fields().exclude("textContent").exclude("compressedTextContent");
+        return Optional.ofNullable(mongoTemplate.findOne(query, RawTextMongo.class));
+    }
+
+    @Override
+    public Stream<RawTextMongo> streamAll(int batchSize, String afterId) {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(batchSize);
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("_id").gt(afterId));
+        }
+        return StreamUtils.createStreamFromIterator(mongoTemplate.stream(query, RawTextMongo.class));
+    }
+
+    static Query patchQuery(String id, Long expectedVersion) {
+        Query query = Query.query(Criteria.where("_id").is(id));
+        if (expectedVersion != null) {
+            query.addCriteria(expectedVersion == 0 ? Criteria.where("version").in(0L, null) : Criteria.where("version").is(expectedVersion));
+        }
+        return query;
+    }
+
+    static Update patchUpdate(MongoConverter converter, RawTextMongo changes) {
+        Document fields = new Document();
+        converter.write(changes, fields);
+        Update update = new Update().inc("version", 1);
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (!UNPATCHED_FIELDS.contains(field.getKey())) {
+                update.set(field.getKey(), field.getValue());
+            }
+        }
+        // text content is stored in exactly one of its plain, compressed and chunked forms
+        for (List<String> form : TEXT_CONTENT_FORMS) {
+            if (fields.containsKey(form.get(0))) {
+                for (List<String> other : TEXT_CONTENT_FORMS) {
+                    if (other != form) {
+                        other.forEach(update::unset);
+                    }
+                }
+                break;
+            }
+        }
+        return update;
+    }
+
+    static OptimisticLockingFailureException versionConflict(String id, Long expectedVersion) {
+        return new OptimisticLockingFailureException(String.format("Raw text with id %s is no longer at version %d", id, expectedVersion));
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.matthewjohnson42.memex.data.repository.mongo;
+
+import com.matthewjohnson42.memex.data.entity.mongo.SyncCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+/**
+ * Data access object for the Mongo collection of change stream sync checkpoints, one per synced entity
+ */
+public interface SyncCheckpointMongoRepo extends MongoRepository<SyncCheckpoint, String> {
+
+}
@@ -3,14 +3,30 @@ package com.matthewjohnson42.memex.data.service;
 import com.matthewjohnson42.memex.data.converter.DtoEntityConverter;
 import com.matthewjohnson42.memex.data.dto.DtoForEntity;
 import com.matthewjohnson42.memex.data.entity.Entity;
+import com.matthewjohnson42.memex.data.metrics.DataMetrics;
 import com.matthewjohnson42.memex.data.repository.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Describes a data service used for implementing application persistence logic and transforming an entity to a DTO
@@ -29,40 +45,161 @@ public abstract class DataService<ID, D extends DtoForEntity<ID>, E extends Enti
 
     protected DtoEntityConverter<ID, D, E> converter;
     protected Repository<E, ID> repository;
+    protected DataMetrics metrics = DataMetrics.NOOP;
+    protected final String entityName;
 
     public DataService(DtoEntityConverter<ID, D, E> converter, Repository<E, ID> repository) {
         this.converter = converter;
         this.repository = repository;
+        Class<?> entityClass = ResolvableType.forClass(this.getClass()).as(DataService.class).resolveGeneric(2);
+        this.entityName = entityClass == null
+                ? this.getClass().getSimpleName().toLowerCase()
+                : entityClass.getSimpleName().replaceAll("(Mongo|ES)$", "").toLowerCase();
+    }
+
+    @Autowired(required = false)
+    public void setMetrics(DataMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public D getById(ID id) {
-        E entity = getIfExists(id);
-        return converter.convertEntity(entity);
+        return timed("getById", () -> {
+            E entity = getIfExists(id);
+            return converter.convertEntity(entity);
+        });
+    }
+
+    /**
+     * Returns one element per requested id, in request order. Ids with no stored entity map to an empty Optional.
+     */
+    public List<Optional<D>> getByIds(List<ID> ids) {
+        return timed("getByIds", () -> {
+            Map<ID, E> entities = findAllById(ids);
+            List<Optional<D>> dtos = new ArrayList<>(ids.size());
+            for (ID id : ids) {
+                E entity = entities.get(id);
+                dtos.add(entity == null ? Optional.empty() : Optional.of(converter.convertEntity(entity)));
+            }
+            return dtos;
+        });
     }
 
     // pass in date time to allow non-assignment in converter
     public D create(D dto, LocalDateTime createDateTime) {
-        E entity = converter.convertDto(dto);
-        checkId(entity);
-        entity.setCreateDateTime(createDateTime);
-        entity.setUpdateDateTime(createDateTime);
-        entity = repository.save(entity);
-        logger.info("Wrote new object with class {} and id {}", entity.getClass(), entity.getId());
-        return converter.convertEntity(entity);
+        return timed("create", () -> {
+            E entity = converter.convertDto(dto);
+            checkId(entity);
+            entity.setCreateDateTime(createDateTime);
+            entity.setUpdateDateTime(createDateTime);
+            entity.setVersion(0L);
+            entity = saveEntity(entity);
+            logger.info("Wrote new object with class {} and id {}", entity.getClass(), entity.getId());
+            return converter.convertEntity(entity);
+        });
     }
 
     public D create(D dto) {
         return create(dto, LocalDateTime.now());
     }
 
+    // pass in date time to allow non-assignment in converter
+    public List<D> createAll(List<D> dtos, LocalDateTime createDateTime) {
+        return timed("createAll", () -> {
+            List<E> entities = new ArrayList<>(dtos.size());
+            for (D dto : dtos) {
+                E entity = converter.convertDto(dto);
+                checkId(entity);
+                entity.setCreateDateTime(createDateTime);
+                entity.setUpdateDateTime(createDateTime);
+                entity.setVersion(0L);
+                entities.add(entity);
+            }
+            List<D> created = new ArrayList<>(entities.size());
+            for (E entity : saveEntities(entities)) {
+                created.add(converter.convertEntity(entity));
+            }
+            logger.info("Wrote {} new objects with class {}", created.size(), entities.isEmpty() ? null : entities.get(0).getClass());
+            return created;
+        });
+    }
+
+    public List<D> createAll(List<D> dtos) {
+        return createAll(dtos, LocalDateTime.now());
+    }
+
+    /**
+     * Creates a value whose content is read from the reader instead of the DTO, such as a raw text too large to
+     * hold in memory. Memory use depends on the copy buffer of the service rather than the size of the content.
+     *
+     * @throws ResponseStatusException with status NOT_IMPLEMENTED if the service does not store streamed content
+     */
+    // pass in date time to allow non-assignment in converter
+    public D createFromReader(D dto, Reader content, LocalDateTime createDateTime) {
+        return timed("createFromReader", () -> {
+            E entity = converter.convertDto(dto);
+            checkId(entity);
+            entity.setCreateDateTime(createDateTime);
+            entity.setUpdateDateTime(createDateTime);
+            entity.setVersion(0L);
+            entity = saveEntity(entity, content);
+            logger.info("Wrote new object with class {} and id {} from a stream", entity.getClass(), entity.getId());
+            return converter.convertEntity(entity);
+        });
+    }
+
+    public D createFromReader(D dto, Reader content) {
+        return createFromReader(dto, content, LocalDateTime.now());
+    }
+
+    /**
+     * @param content UTF-8 encoded content
+     * @see #createFromReader(DtoForEntity, Reader)
+     */
+    public D createFromStream(D dto, InputStream content) {
+        return createFromReader(dto, new InputStreamReader(content, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens the UTF-8 encoded content of the value for reading. The stream must be closed by the caller.
+     *
+     * @throws ResponseStatusException with status NOT_IMPLEMENTED if the service does not store streamed content
+     */
+    public InputStream openContentStream(ID id) {
+        return timed("openContentStream", () -> openContent(getIfExists(id)));
+    }
+
+    public Reader openContentReader(ID id) {
+        return new InputStreamReader(openContentStream(id), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Applies the non-null values of the DTO to the stored value in a single repository request.
+     * If the DTO carries a version, the update only succeeds if the stored value is still at that version.
+     *
+     * @throws ResponseStatusException with status CONFLICT if the stored value has been updated since the version was read
+     */
     // pass in date time to allow non-assignment in converter
     public D update(D dto, LocalDateTime updateDateTime) {
-        E entity = getIfExists(dto.getId());
-        entity = converter.updateFromDto(entity, dto);
-        entity.setUpdateDateTime(updateDateTime);
-        entity = repository.save(entity);
-        logger.info("Updated values on object with class {} and id {}", entity.getClass(), entity.getId());
-        return converter.convertEntity(entity);
+        return timed("update", () -> {
+            E changes = converter.convertDto(dto);
+            changes.setUpdateDateTime(updateDateTime);
+            Optional<E> patched;
+            try {
+                patched = patchEntity(dto.getId(), changes, dto.getVersion());
+            } catch (OptimisticLockingFailureException e) {
+                String msg = String.format("Entity with id %s was updated since version %s was read", dto.getId(), dto.getVersion());
+                logger.error(msg);
+                throw new ResponseStatusException(HttpStatus.CONFLICT, msg, e);
+            }
+            if (!patched.isPresent()) {
+                String msg = String.format("No entity found for id %s", dto.getId());
+                logger.error(msg);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+            }
+            E entity = patched.get();
+            logger.info("Updated values on object with class {} and id {}", entity.getClass(), entity.getId());
+            return converter.convertEntity(entity);
+        });
     }
 
     public D update(D dto) {
@@ -70,18 +207,105 @@ public abstract class DataService<ID, D extends DtoForEntity<ID>, E extends Enti
     }
 
     public D deleteById(ID id) {
-        E entity = getIfExists(id);
-        repository.deleteById(id);
-        logger.info("Deleted object with class {} and id {}", entity.getClass(), id);
-        return converter.convertEntity(entity);
+        return timed("deleteById", () -> {
+            E entity = getIfExists(id);
+            deleteEntity(id);
+            deleteContent(Collections.singletonList(entity));
+            logger.info("Deleted object with class {} and id {}", entity.getClass(), id);
+            return converter.convertEntity(entity);
+        });
+    }
+
+    /**
+     * Deletes the entities stored for the given ids. Returns one element per requested id, in request order,
+     * holding the deleted value or an empty Optional if no entity was stored for the id.
+     */
+    public List<Optional<D>> deleteByIds(List<ID> ids) {
+        return timed("deleteByIds", () -> {
+            Map<ID, E> entities = findAllById(ids);
+            if (!entities.isEmpty()) {
+                deleteEntities(entities.keySet());
+                deleteContent(entities.values());
+            }
+            List<Optional<D>> dtos = new ArrayList<>(ids.size());
+            for (ID id : ids) {
+                E entity = entities.get(id);
+                dtos.add(entity == null ? Optional.empty() : Optional.of(converter.convertEntity(entity)));
+            }
+            logger.info("Deleted {} of {} requested objects", entities.size(), ids.size());
+            return dtos;
+        });
     }
 
     public D delete(D dto) {
         return deleteById(dto.getId());
     }
 
+    /**
+     * Streams every stored value in id order. The stream must be closed to release the underlying cursor.
+     *
+     * @param afterId the id of the last value already read, used as a checkpoint to resume an export, or null
+     */
+    public Stream<D> streamAll(int batchSize, ID afterId) {
+        return repository.streamAll(batchSize, afterId).map(converter::convertEntity);
+    }
+
+    /**
+     * Returns the value without its content fields, such as the text content of raw text, read with a projection
+     */
+    public D getMetadataById(ID id) {
+        return timed("getMetadataById", () -> {
+            Optional<E> entity = repository.findMetadataById(id);
+            if (entity.isPresent()) {
+                return converter.convertEntity(entity.get());
+            } else {
+                String msg = String.format("No entity found for id %s", id.toString());
+                logger.error(msg);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+            }
+        });
+    }
+
     public boolean exists(ID id) {
-        return repository.findById(id).isPresent();
+        return timed("exists", () -> repository.existsById(id));
+    }
+
+    // write operations of the service, overridden by services that write to more than one repository
+    protected E saveEntity(E entity) {
+        return repository.save(entity);
+    }
+
+    protected List<E> saveEntities(List<E> entities) {
+        return repository.saveAll(entities);
+    }
+
+    protected Optional<E> patchEntity(ID id, E changes, Long expectedVersion) {
+        return repository.patch(id, changes, expectedVersion);
+    }
+
+    protected void deleteEntity(ID id) {
+        repository.deleteById(id);
+    }
+
+    protected void deleteEntities(Collection<ID> ids) {
+        repository.deleteAllById(ids);
+    }
+
+    // content operations, overridden by services that store content outside of the entity
+    protected E saveEntity(E entity, Reader content) {
+        throw contentNotSupported();
+    }
+
+    protected InputStream openContent(E entity) {
+        throw contentNotSupported();
+    }
+
+    protected void deleteContent(Collection<E> entities) { }
+
+    private ResponseStatusException contentNotSupported() {
+        String msg = String.format("Streamed content is not supported for %s", entityName);
+        logger.error(msg);
+        return new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, msg);
     }
 
     protected E getIfExists(ID id) {
@@ -95,7 +319,33 @@ public abstract class DataService<ID, D extends DtoForEntity<ID>, E extends Enti
         }
     }
 
-    private void checkId(E entity) {
+    private Map<ID, E> findAllById(List<ID> ids) {
+        Map<ID, E> entities = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (E entity : repository.findAllById(ids)) {
+                entities.put(entity.getId(), entity);
+            }
+        }
+        return entities;
+    }
+
+    // times the operation, tagging the outcome with the status of a ResponseStatusException or the exception class
+    protected <T> T timed(String operation, Supplier<T> body) {
+        DataMetrics.Sample sample = metrics.start("service", entityName, operation);
+        try {
+            T result = body.get();
+            sample.stop("success");
+            return result;
+        } catch (ResponseStatusException e) {
+            sample.stop(String.valueOf(e.getRawStatusCode()));
+            throw e;
+        } catch (RuntimeException e) {
+            sample.stop(e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    protected void checkId(E entity) {
         if (entity.getId() == null) {
             String msg = String.format("No id found for entity of type %s", entity.getClass().toString());
             logger.error(msg);
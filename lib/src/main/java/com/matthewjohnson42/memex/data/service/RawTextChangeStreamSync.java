@@ -0,0 +1,370 @@
+package com.matthewjohnson42.memex.data.service;
+
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkItem;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkResponse;
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.entity.mongo.SyncCheckpoint;
+import com.matthewjohnson42.memex.data.metrics.DataMetrics;
+import com.matthewjohnson42.memex.data.repository.Repository;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.ElasticBulkProcessor;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESRestTemplate;
+import com.matthewjohnson42.memex.data.repository.mongo.RawTextMongoRepo;
+import com.matthewjohnson42.memex.data.repository.mongo.SyncCheckpointMongoRepo;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the raw text ElasticSearch index in line with the Mongo collection by tailing a change stream on it.
+ * Changes are collected into batches, reduced to the latest change per id, and applied with _bulk requests of at most
+ * the configured bulk size. The resume token of the last change in a batch is stored once ElasticSearch has accepted the batch, so after
+ * a restart or failure the stream resumes from the last applied batch and changes are delivered at least once.
+ * Changes that ElasticSearch rejects are recorded in the index outbox, whose drainer retries them, before the
+ * checkpoint moves past them.
+ * With the sync enabled, write paths only need to write to Mongo. Change streams require a replica set.
+ *
+ * @see SyncCheckpoint
+ */
+@Profile("enablemongorepositories & enableelasticrepositories & enablechangestreamsync")
+@Component
+public class RawTextChangeStreamSync implements InitializingBean, DisposableBean {
+
+    private static final String ENTITY_NAME = "rawtext";
+    private static final String COLLECTION_NAME = "rawText";
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    // the stored resume token is older than the oplog, or is no longer valid for the collection
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MongoTemplate mongoTemplate;
+    private final SyncCheckpointMongoRepo checkpointRepo;
+    // typed as the data library repository, RawTextMongoRepo inherits ambiguous overloads from Spring Data
+    private final Repository<RawTextMongo, String> mongoRepo;
+    private final RawTextESRestTemplate esTemplate;
+    private final RawTextIndexOutbox outbox;
+    private DataMetrics metrics = DataMetrics.NOOP;
+
+    @Value("${db.sync.batchsize:500}")
+    private int batchSize;
+
+    // longest time a change waits in a partial batch
+    @Value("${db.sync.maxwaitms:1000}")
+    private long maxWaitMillis;
+
+    // interval at which the resume token is stored while no changes arrive, so that it does not fall off the oplog
+    @Value("${db.sync.checkpointintervalms:60000}")
+    private long checkpointIntervalMillis;
+
+    @Value("${db.sync.backoffms:100}")
+    private long backoffMillis;
+
+    // indexes the whole collection when no resume token is stored, or the stored one can no longer be used
+    @Value("${db.sync.resyncwithoutcheckpoint:true}")
+    private boolean resyncWithoutCheckpoint;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public RawTextChangeStreamSync(MongoTemplate mongoTemplate,
+                                   SyncCheckpointMongoRepo checkpointRepo,
+                                   RawTextMongoRepo mongoRepo,
+                                   RawTextESRestTemplate esTemplate,
+                                   RawTextIndexOutbox outbox) {
+        this.mongoTemplate = mongoTemplate;
+        this.checkpointRepo = checkpointRepo;
+        this.mongoRepo = mongoRepo;
+        this.esTemplate = esTemplate;
+        this.outbox = outbox;
+    }
+
+    @Autowired(required = false)
+    public void setMetrics(DataMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        worker = new Thread(this::run, "rawtext-change-stream-sync");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(maxWaitMillis + 5000);
+    }
+
+    /**
+     * Indexes every raw text stored in Mongo. Documents deleted from Mongo without a change event are not removed.
+     * Raw texts that could not be indexed are recorded in the outbox, whose drainer retries them, so that a document
+     * that is rejected every time does not prevent the checkpoint from being saved.
+     */
+    public void resync() {
+        logger.info("Indexing the '{}' collection into ElasticSearch", COLLECTION_NAME);
+        try (ElasticBulkProcessor<String, RawTextES> processor = esTemplate.newBulkProcessor();
+             Stream<RawTextMongo> all = mongoRepo.streamAll(batchSize, null)) {
+            all.forEach(rawTextMongo -> processor.index(outbox.toIndexDocument(rawTextMongo)));
+            processor.awaitFlush();
+            logger.info("Indexed {} raw texts, {} failed", processor.getSucceededCount(), processor.getFailedCount());
+            Set<String> failedIds = processor.getFailedIds();
+            if (!failedIds.isEmpty()) {
+                logger.error("Resync of '{}' failed to index {} raw texts, leaving them to the outbox drainer", COLLECTION_NAME, failedIds.size());
+                outbox.record(failedIds);
+            }
+        }
+    }
+
+    private void run() {
+        long backoff = backoffMillis;
+        while (running) {
+            try {
+                follow();
+                backoff = backoffMillis;
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_HISTORY_LOST || e.getErrorCode() == CHANGE_STREAM_FATAL_ERROR) {
+                    logger.error("Change stream on '{}' cannot resume from the stored token, starting over", COLLECTION_NAME, e);
+                    checkpointRepo.deleteById(ENTITY_NAME);
+                } else {
+                    backoff = pause(backoff, e);
+                }
+            } catch (RuntimeException e) {
+                backoff = pause(backoff, e);
+            }
+        }
+    }
+
+    private long pause(long backoff, RuntimeException e) {
+        if (!running) {
+            return backoff;
+        }
+        logger.warn("Change stream sync of '{}' failed, retrying in {} ms", COLLECTION_NAME, backoff, e);
+        sleep(backoff);
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    // tails the change stream until stopped, the cursor fails or the stream is invalidated
+    private void follow() {
+        Optional<SyncCheckpoint> checkpoint = checkpointRepo.findById(ENTITY_NAME);
+        ChangeStreamIterable<Document> stream = mongoTemplate.getCollection(COLLECTION_NAME).watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .batchSize(batchSize)
+                .maxAwaitTime(maxWaitMillis, TimeUnit.MILLISECONDS);
+        if (checkpoint.isPresent()) {
+            stream = stream.resumeAfter(BsonDocument.parse(checkpoint.get().getResumeToken()));
+        }
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            // the stream is open before the resync, so that writes made during the resync are applied after it
+            if (!checkpoint.isPresent()) {
+                if (resyncWithoutCheckpoint) {
+                    resync();
+                }
+                saveCheckpoint(cursor.getResumeToken());
+            }
+            List<ChangeStreamDocument<Document>> batch = new ArrayList<>();
+            long batchStarted = 0;
+            long lastCheckpoint = System.currentTimeMillis();
+            while (running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null) {
+                    switch (change.getOperationType()) {
+                        case INSERT:
+                        case UPDATE:
+                        case REPLACE:
+                        case DELETE:
+                            if (batch.isEmpty()) {
+                                batchStarted = System.currentTimeMillis();
+                            }
+                            batch.add(change);
+                            break;
+                        case INVALIDATE:
+                            logger.warn("Change stream on '{}' was invalidated, the collection was dropped or renamed", COLLECTION_NAME);
+                            apply(batch);
+                            checkpointRepo.deleteById(ENTITY_NAME);
+                            return;
+                        default:
+                            break;
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (!batch.isEmpty() && (batch.size() >= batchSize || now - batchStarted >= maxWaitMillis)) {
+                    apply(batch);
+                    batch = new ArrayList<>();
+                    lastCheckpoint = now;
+                } else if (batch.isEmpty() && now - lastCheckpoint >= checkpointIntervalMillis && cursor.getResumeToken() != null) {
+                    saveCheckpoint(cursor.getResumeToken());
+                    lastCheckpoint = now;
+                }
+            }
+        }
+    }
+
+    // indexes or deletes the latest state of each changed id, retrying until ElasticSearch has accepted the batch
+    private void apply(List<ChangeStreamDocument<Document>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Map<String, ChangeStreamDocument<Document>> latest = new LinkedHashMap<>();
+        for (ChangeStreamDocument<Document> change : batch) {
+            String id = idOf(change.getDocumentKey().get("_id"));
+            latest.remove(id);
+            latest.put(id, change);
+        }
+        List<String> ids = new ArrayList<>(latest.size());
+        List<byte[]> entries = new ArrayList<>(latest.size());
+        int indexed = 0;
+        int deleted = 0;
+        for (Map.Entry<String, ChangeStreamDocument<Document>> change : latest.entrySet()) {
+            Document fullDocument = change.getValue().getFullDocument();
+            ids.add(change.getKey());
+            // an update looked up after the document was deleted has no full document
+            if (fullDocument == null) {
+                entries.add(esTemplate.bulkDeleteEntry(change.getKey()));
+                deleted++;
+            } else {
+                RawTextMongo rawTextMongo = mongoTemplate.getConverter().read(RawTextMongo.class, fullDocument);
+                entries.add(esTemplate.bulkIndexEntry(outbox.toIndexDocument(rawTextMongo)));
+                indexed++;
+            }
+        }
+        int failed = submit(ids, entries);
+        ChangeStreamDocument<Document> last = batch.get(batch.size() - 1);
+        saveCheckpoint(last.getResumeToken());
+        long lagMillis = last.getClusterTime() == null ? 0 : System.currentTimeMillis() - last.getClusterTime().getTime() * 1000L;
+        metrics.recordSync(ENTITY_NAME, Math.max(lagMillis, 0), indexed, deleted, failed);
+        logger.debug("Applied {} changes to {} raw texts, {} failed", batch.size(), latest.size(), failed);
+    }
+
+    // splits the entries into requests of at most the bulk size, a single entry larger than that is sent alone
+    private int submit(List<String> ids, List<byte[]> entries) {
+        int failed = 0;
+        int from = 0;
+        long bytes = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > from && bytes + entries.get(i).length > esTemplate.getBulkBytes()) {
+                failed += submitBulk(ids.subList(from, i), entries.subList(from, i));
+                from = i;
+                bytes = 0;
+            }
+            bytes += entries.get(i).length;
+        }
+        return failed + submitBulk(ids.subList(from, entries.size()), entries.subList(from, entries.size()));
+    }
+
+    // returns the number of entries rejected with a non retryable error, which are left to the outbox drainer
+    private int submitBulk(List<String> ids, List<byte[]> entries) {
+        List<String> rejectedIds = new ArrayList<>();
+        long backoff = backoffMillis;
+        while (!entries.isEmpty()) {
+            List<String> retryIds = new ArrayList<>();
+            List<byte[]> retryEntries = new ArrayList<>();
+            try {
+                ESBulkResponse response = esTemplate.bulk(concat(entries));
+                for (int i = 0; i < entries.size() && response.isErrors(); i++) {
+                    ESBulkItem item = response.getItem(i);
+                    if (item.getError() == null) {
+                        continue;
+                    }
+                    if (item.getStatus() == HttpStatus.TOO_MANY_REQUESTS.value() || item.getStatus() >= 500) {
+                        retryIds.add(ids.get(i));
+                        retryEntries.add(entries.get(i));
+                    } else {
+                        logger.error("Sync of raw text with id {} was rejected, leaving it to the outbox drainer: {}", ids.get(i), item.getError());
+                        rejectedIds.add(ids.get(i));
+                    }
+                }
+            } catch (HttpClientErrorException e) {
+                if (e.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                    // such as a 413 for a document larger than the request size limit, resending it would fail again
+                    logger.error("Bulk request of {} synced changes was rejected, leaving them to the outbox drainer", entries.size(), e);
+                    rejectedIds.addAll(ids);
+                } else {
+                    retryIds = ids;
+                    retryEntries = entries;
+                }
+            } catch (RestClientException e) {
+                logger.warn("Bulk request of {} synced changes failed", entries.size(), e);
+                retryIds = ids;
+                retryEntries = entries;
+            }
+            if (!retryEntries.isEmpty()) {
+                if (!running) {
+                    throw new IllegalStateException("Change stream sync stopped before the batch was applied");
+                }
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+            ids = retryIds;
+            entries = retryEntries;
+        }
+        if (!rejectedIds.isEmpty()) {
+            outbox.record(rejectedIds);
+        }
+        return rejectedIds.size();
+    }
+
+    private void saveCheckpoint(BsonDocument resumeToken) {
+        if (resumeToken != null) {
+            checkpointRepo.save(new SyncCheckpoint(ENTITY_NAME, resumeToken.toJson(), LocalDateTime.now()));
+        }
+    }
+
+    private static String idOf(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private static byte[] concat(List<byte[]> entries) {
+        int size = 0;
+        for (byte[] entry : entries) {
+            size += entry.length;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (byte[] entry : entries) {
+            out.write(entry, 0, entry.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+}
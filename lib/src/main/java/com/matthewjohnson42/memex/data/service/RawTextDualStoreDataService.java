@@ -0,0 +1,256 @@
+package com.matthewjohnson42.memex.data.service;
+
+import com.matthewjohnson42.memex.data.converter.RawTextMongoConverter;
+import com.matthewjohnson42.memex.data.dto.RawTextDto;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.mongo.IndexOutboxEntry;
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.repository.Repository;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESRestTemplate;
+import com.matthewjohnson42.memex.data.repository.mongo.RawTextContentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Raw text data service writing to Mongo and ElasticSearch concurrently. Mongo is the store of record, reads are
+ * served from Mongo. The pending index operation is recorded in the outbox first, then the ElasticSearch write runs on
+ * a separate thread while the calling thread writes to Mongo, so a write takes as long as the slower of the two stores
+ * after the outbox write. The outbox entry is only removed once both writes have succeeded in the same order in both
+ * stores. If the ElasticSearch write fails, may have been overtaken by another write to the same id, or the process
+ * stops before it completes, the outbox drainer indexes the entity as stored in Mongo.
+ * Oversized and streamed text content is stored in chunks, only a prefix of it is indexed.
+ * Mongo is accessed through the primary raw text repository, which is the read-through cache when it is enabled.
+ *
+ * @see RawTextIndexOutbox
+ */
+@Profile("enablemongorepositories & enableelasticrepositories")
+@Service
+public class RawTextDualStoreDataService extends DataService<String, RawTextDto, RawTextMongo> implements DisposableBean {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final RawTextESRestTemplate esTemplate;
+    private final RawTextIndexOutbox outbox;
+    private final RawTextContentStore contentStore;
+    private final ExecutorService executor;
+
+    public RawTextDualStoreDataService(RawTextMongoConverter converter,
+                                       Repository<RawTextMongo, String> repository,
+                                       RawTextESRestTemplate esTemplate,
+                                       RawTextIndexOutbox outbox,
+                                       RawTextContentStore contentStore) {
+        super(converter, repository);
+        this.esTemplate = esTemplate;
+        this.outbox = outbox;
+        this.contentStore = contentStore;
+        AtomicLong count = new AtomicLong();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "rawtext-index-write-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @Override
+    protected RawTextMongo saveEntity(RawTextMongo entity) {
+        return saveChunked(contentStore.chunkIfOversized(entity));
+    }
+
+    @Override
+    protected List<RawTextMongo> saveEntities(List<RawTextMongo> entities) {
+        List<String> ids = new ArrayList<>(entities.size());
+        List<RawTextES> documents = new ArrayList<>(entities.size());
+        try {
+            for (RawTextMongo entity : entities) {
+                ids.add(entity.getId());
+                documents.add(outbox.toIndexDocument(contentStore.chunkIfOversized(entity)));
+            }
+            return writeBoth(ids,
+                    () -> repository.saveAll(entities),
+                    () -> esTemplate.saveAll(documents),
+                    (saved, indexed) -> true);
+        } catch (RuntimeException e) {
+            deleteContent(entities);
+            throw e;
+        }
+    }
+
+    @Override
+    protected RawTextMongo saveEntity(RawTextMongo entity, Reader content) {
+        return saveChunked(contentStore.store(entity, content));
+    }
+
+    @Override
+    protected InputStream openContent(RawTextMongo entity) {
+        return contentStore.open(entity);
+    }
+
+    @Override
+    protected void deleteContent(Collection<RawTextMongo> entities) {
+        for (RawTextMongo entity : entities) {
+            if (entity.getTextContentFileId() != null) {
+                contentStore.delete(entity.getTextContentFileId());
+            }
+        }
+    }
+
+    /**
+     * Patches Mongo and ElasticSearch with the same version check. Both stores increment the version of the entity,
+     * so if the versions resulting from the two patches differ, the patches of concurrent updaters were applied in a
+     * different order, and the outbox drainer restores the index from Mongo. The same happens if either patch fails.
+     */
+    @Override
+    protected Optional<RawTextMongo> patchEntity(String id, RawTextMongo changes, Long expectedVersion) {
+        // chunked text content replaced by the patch is deleted once the patch succeeds
+        String replacedFileId = changes.getTextContent() == null && changes.getCompressedTextContent() == null
+                ? null
+                : repository.findMetadataById(id).map(RawTextMongo::getTextContentFileId).orElse(null);
+        contentStore.chunkIfOversized(changes);
+        Optional<RawTextMongo> patched;
+        try {
+            RawTextES documentChanges = outbox.toIndexDocument(changes);
+            patched = writeBoth(Collections.singletonList(id),
+                    () -> repository.patch(id, changes, expectedVersion),
+                    () -> esTemplate.patch(id, documentChanges, expectedVersion).orElseThrow(() ->
+                            new IllegalStateException(String.format("Raw text with id %s is not indexed", id))),
+                    (mongoPatched, esPatched) -> !mongoPatched.isPresent()
+                            || Objects.equals(mongoPatched.get().getVersion(), esPatched.getVersion()));
+        } catch (RuntimeException e) {
+            deleteContent(Collections.singletonList(changes));
+            throw e;
+        }
+        if (patched.isPresent() && replacedFileId != null) {
+            contentStore.delete(replacedFileId);
+        } else if (!patched.isPresent()) {
+            deleteContent(Collections.singletonList(changes));
+        }
+        return patched;
+    }
+
+    @Override
+    protected void deleteEntity(String id) {
+        writeBoth(Collections.singletonList(id),
+                () -> {
+                    repository.deleteById(id);
+                    return null;
+                },
+                () -> {
+                    try {
+                        esTemplate.deleteById(id);
+                    } catch (HttpClientErrorException.NotFound e) {
+                        logger.debug("Object with id {} was not indexed", id);
+                    }
+                    return null;
+                },
+                (deleted, unindexed) -> true);
+    }
+
+    @Override
+    protected void deleteEntities(Collection<String> ids) {
+        writeBoth(ids,
+                () -> {
+                    repository.deleteAllById(ids);
+                    return null;
+                },
+                () -> {
+                    esTemplate.deleteAllById(ids);
+                    return null;
+                },
+                (deleted, unindexed) -> true);
+    }
+
+    // saves an entity whose oversized text content is already chunked, deleting the chunks if the Mongo write fails
+    private RawTextMongo saveChunked(RawTextMongo entity) {
+        try {
+            RawTextES document = outbox.toIndexDocument(entity);
+            return writeBoth(Collections.singletonList(entity.getId()),
+                    () -> repository.save(entity),
+                    () -> esTemplate.save(document),
+                    (saved, indexed) -> true);
+        } catch (RuntimeException e) {
+            deleteContent(Collections.singletonList(entity));
+            throw e;
+        }
+    }
+
+    /**
+     * Records the outbox entries, then writes to both stores concurrently. The entries are completed only if both
+     * writes succeed and the results show that the writes were applied in the same order in both stores. Entries for
+     * ids that another write in this process overlapped are left for the drainer.
+     */
+    private <T, R> T writeBoth(Collection<String> ids, Supplier<T> mongoWrite, Supplier<R> esWrite, BiPredicate<T, R> inOrder) {
+        // recorded before either write starts, so that a failure or a crash at any later point leaves an entry
+        List<IndexOutboxEntry> entries = outbox.record(ids);
+        outbox.startWrites(ids);
+        CompletableFuture<R> esFuture;
+        T result;
+        try {
+            esFuture = CompletableFuture.supplyAsync(esWrite, executor);
+            result = mongoWrite.get();
+        } catch (RuntimeException e) {
+            // the entries are not completed, so the drainer restores the index even if the ElasticSearch write lands late
+            outbox.finishWrites(ids);
+            logger.error("Mongo write failed for ids {}, the ElasticSearch index may not match until the outbox is drained", ids);
+            throw e;
+        }
+        R esResult;
+        try {
+            esResult = esFuture.join();
+        } catch (CompletionException e) {
+            outbox.finishWrites(ids);
+            logger.warn("ElasticSearch write failed for ids {}, leaving it to the outbox drainer", ids, e.getCause());
+            return result;
+        }
+        Set<String> overlapped = outbox.finishWrites(ids);
+        if (!inOrder.test(result, esResult)) {
+            logger.warn("ElasticSearch write for ids {} may have been applied out of order, leaving it to the outbox drainer", ids);
+            return result;
+        }
+        List<IndexOutboxEntry> completed = entries;
+        if (!overlapped.isEmpty()) {
+            logger.warn("ElasticSearch write for ids {} may have been applied out of order, leaving it to the outbox drainer", overlapped);
+            completed = new ArrayList<>(entries.size());
+            for (IndexOutboxEntry entry : entries) {
+                if (!overlapped.contains(entry.getEntityId())) {
+                    completed.add(entry);
+                }
+            }
+        }
+        List<IndexOutboxEntry> toComplete = completed;
+        executor.execute(() -> {
+            try {
+                outbox.complete(toComplete);
+            } catch (RuntimeException e) {
+                logger.warn("Could not remove completed outbox entries for ids {}", ids, e);
+            }
+        });
+        return result;
+    }
+
+}
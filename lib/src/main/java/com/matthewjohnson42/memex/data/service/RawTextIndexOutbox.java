@@ -0,0 +1,332 @@
+package com.matthewjohnson42.memex.data.service;
+
+import com.matthewjohnson42.memex.data.converter.RawTextESConverter;
+import com.matthewjohnson42.memex.data.converter.RawTextMongoConverter;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.RawTextES;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESBulkResponse;
+import com.matthewjohnson42.memex.data.entity.elasticsearch.wrappers.ESError;
+import com.matthewjohnson42.memex.data.entity.mongo.IndexOutboxEntry;
+import com.matthewjohnson42.memex.data.entity.mongo.RawTextMongo;
+import com.matthewjohnson42.memex.data.repository.elasticsearch.RawTextESRestTemplate;
+import com.matthewjohnson42.memex.data.repository.mongo.IndexOutboxMongoRepo;
+import com.matthewjohnson42.memex.data.repository.mongo.RawTextContentStore;
+import com.matthewjohnson42.memex.data.repository.mongo.RawTextMongoRepo;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable record of raw text index operations that have not yet been confirmed by ElasticSearch.
+ * Entries are written to Mongo before a write, removed once both stores have accepted it, and otherwise replayed in
+ * batches by a background drainer. Replaying an entry indexes the entity as currently stored in Mongo, or removes it
+ * from the index if it is no longer stored, so replays are idempotent.
+ * A failed replay is retried with exponential backoff, behind newer entries, and an entry that fails the maximum
+ * number of attempts is kept as a dead letter and no longer replayed.
+ * Writes to the same id that overlap in this process, including replays, may reach ElasticSearch out of order, so
+ * the entries for that id are left for the drainer rather than completed.
+ * Replays are sent in bulk requests of at most the configured bulk size, a request that fails as a whole counts as a
+ * failed attempt of each of its entries.
+ *
+ * @see RawTextDualStoreDataService
+ */
+@Profile("enablemongorepositories & enableelasticrepositories")
+@Component
+public class RawTextIndexOutbox implements InitializingBean, DisposableBean {
+
+    private static final String ENTITY_NAME = "rawtext";
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final IndexOutboxMongoRepo outboxRepo;
+    private final RawTextMongoRepo mongoRepo;
+    private final RawTextESRestTemplate esTemplate;
+    private final RawTextMongoConverter mongoConverter;
+    private final RawTextESConverter esConverter;
+    private final RawTextContentStore contentStore;
+
+    @Value("${db.outbox.drainintervalms:5000}")
+    private long drainIntervalMillis;
+
+    // entries younger than this belong to writes that may still be in flight
+    @Value("${db.outbox.minagems:30000}")
+    private long minAgeMillis;
+
+    @Value("${db.outbox.batchsize:500}")
+    private int batchSize;
+
+    @Value("${db.outbox.maxattempts:10}")
+    private int maxAttempts;
+
+    // delay before the first retry of a failed replay, doubled for each further attempt
+    @Value("${db.outbox.backoffms:30000}")
+    private long backoffMillis;
+
+    @Value("${db.outbox.maxbackoffms:3600000}")
+    private long maxBackoffMillis;
+
+    // characters of chunked text content indexed in ElasticSearch, the remainder is not searchable
+    @Value("${db.mongo.chunking.indexedchars:1000000}")
+    private int indexedChars;
+
+    private ScheduledExecutorService scheduler;
+
+    private final Map<String, WritesInFlight> writesInFlight = new ConcurrentHashMap<>();
+
+    public RawTextIndexOutbox(IndexOutboxMongoRepo outboxRepo,
+                              RawTextMongoRepo mongoRepo,
+                              RawTextESRestTemplate esTemplate,
+                              RawTextMongoConverter mongoConverter,
+                              RawTextESConverter esConverter,
+                              RawTextContentStore contentStore) {
+        this.outboxRepo = outboxRepo;
+        this.mongoRepo = mongoRepo;
+        this.esTemplate = esTemplate;
+        this.mongoConverter = mongoConverter;
+        this.esConverter = esConverter;
+        this.contentStore = contentStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rawtext-outbox-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::drainSafely, drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    public List<IndexOutboxEntry> record(Collection<String> entityIds) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime firstAttempt = now.plusNanos(minAgeMillis * 1_000_000);
+        List<IndexOutboxEntry> entries = new ArrayList<>(entityIds.size());
+        for (String entityId : entityIds) {
+            entries.add(new IndexOutboxEntry(new ObjectId().toHexString(), ENTITY_NAME, entityId, now, firstAttempt));
+        }
+        return outboxRepo.saveAll(entries);
+    }
+
+    /**
+     * Marks the start of writes to ElasticSearch for the ids, to be followed by {@link #finishWrites}
+     */
+    public void startWrites(Collection<String> entityIds) {
+        for (String entityId : entityIds) {
+            writesInFlight.compute(entityId, (id, writes) -> {
+                WritesInFlight started = writes == null ? new WritesInFlight() : writes;
+                started.count++;
+                started.overlapped |= started.count > 1;
+                return started;
+            });
+        }
+    }
+
+    /**
+     * Marks the end of writes to ElasticSearch for the ids
+     *
+     * @return the ids to which another write was in flight at the same time, in which case the writes to that id may
+     * have reached ElasticSearch in a different order than Mongo
+     */
+    public Set<String> finishWrites(Collection<String> entityIds) {
+        Set<String> overlapped = new HashSet<>();
+        for (String entityId : entityIds) {
+            writesInFlight.computeIfPresent(entityId, (id, writes) -> {
+                if (writes.overlapped) {
+                    overlapped.add(id);
+                }
+                writes.count--;
+                return writes.count == 0 ? null : writes;
+            });
+        }
+        return overlapped;
+    }
+
+    /**
+     * @return entries that failed the maximum number of attempts, oldest first
+     */
+    public List<IndexOutboxEntry> getDeadLetters(int limit) {
+        return outboxRepo.findByEntityNameAndDeadLetterTrue(ENTITY_NAME, PageRequest.of(0, limit, Sort.by("createDateTime")));
+    }
+
+    public void complete(Collection<IndexOutboxEntry> entries) {
+        List<String> ids = new ArrayList<>(entries.size());
+        for (IndexOutboxEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        outboxRepo.deleteAllById(ids);
+    }
+
+    public RawTextES toIndexDocument(RawTextMongo rawTextMongo) {
+        RawTextES rawTextES = esConverter.convertDto(mongoConverter.convertEntity(rawTextMongo));
+        rawTextES.setCreateDateTime(rawTextMongo.getCreateDateTime());
+        rawTextES.setUpdateDateTime(rawTextMongo.getUpdateDateTime());
+        rawTextES.setVersion(rawTextMongo.getVersion());
+        if (rawTextMongo.getTextContentFileId() != null) {
+            rawTextES.setTextContent(contentStore.readPrefix(rawTextMongo, indexedChars));
+        }
+        return rawTextES;
+    }
+
+    /**
+     * Replays every outbox entry older than the minimum age, one batch at a time
+     */
+    public void drain() {
+        boolean more = true;
+        while (more) {
+            more = drainBatch();
+        }
+    }
+
+    private void drainSafely() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            logger.error("Error when draining the ElasticSearch index outbox", e);
+        }
+    }
+
+    private boolean drainBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<IndexOutboxEntry> entries = outboxRepo.findByEntityNameAndDeadLetterFalseAndNextAttemptDateTimeBefore(
+                ENTITY_NAME, now, PageRequest.of(0, batchSize, Sort.by("nextAttemptDateTime")));
+        if (entries.isEmpty()) {
+            return false;
+        }
+        Map<String, List<IndexOutboxEntry>> entriesByEntityId = new LinkedHashMap<>();
+        for (IndexOutboxEntry entry : entries) {
+            entriesByEntityId.computeIfAbsent(entry.getEntityId(), id -> new ArrayList<>()).add(entry);
+        }
+        List<String> entityIds = new ArrayList<>(entriesByEntityId.keySet());
+        Map<String, String> errors = new HashMap<>();
+        Set<String> overlapped;
+        startWrites(entityIds);
+        try {
+            Map<String, RawTextMongo> stored = new HashMap<>();
+            for (RawTextMongo rawTextMongo : mongoRepo.findAllById(entityIds)) {
+                stored.put(rawTextMongo.getId(), rawTextMongo);
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            List<String> bodyIds = new ArrayList<>();
+            for (String entityId : entityIds) {
+                RawTextMongo rawTextMongo = stored.get(entityId);
+                byte[] entry;
+                try {
+                    entry = rawTextMongo == null
+                            ? esTemplate.bulkDeleteEntry(entityId)
+                            : esTemplate.bulkIndexEntry(toIndexDocument(rawTextMongo));
+                } catch (RuntimeException e) {
+                    errors.put(entityId, e.toString());
+                    continue;
+                }
+                if (!bodyIds.isEmpty() && body.size() + entry.length > esTemplate.getBulkBytes()) {
+                    replay(bodyIds, body.toByteArray(), errors);
+                    body.reset();
+                    bodyIds.clear();
+                }
+                body.write(entry, 0, entry.length);
+                bodyIds.add(entityId);
+            }
+            if (!bodyIds.isEmpty()) {
+                replay(bodyIds, body.toByteArray(), errors);
+            }
+        } finally {
+            overlapped = finishWrites(entityIds);
+        }
+        List<IndexOutboxEntry> completed = new ArrayList<>();
+        List<IndexOutboxEntry> retried = new ArrayList<>();
+        for (String entityId : entityIds) {
+            List<IndexOutboxEntry> entityEntries = entriesByEntityId.get(entityId);
+            String error = errors.get(entityId);
+            if (error != null) {
+                logger.warn("Replay of index operation for id {} failed: {}", entityId, error);
+                for (IndexOutboxEntry entry : entityEntries) {
+                    retried.add(fail(entry, error, now));
+                }
+            } else if (overlapped.contains(entityId)) {
+                // a live write to the id raced the replay, which is repeated once the write has settled
+                for (IndexOutboxEntry entry : entityEntries) {
+                    retried.add(entry.setNextAttemptDateTime(now.plusNanos(minAgeMillis * 1_000_000)));
+                }
+            } else {
+                completed.addAll(entityEntries);
+            }
+        }
+        if (!completed.isEmpty()) {
+            complete(completed);
+        }
+        if (!retried.isEmpty()) {
+            outboxRepo.saveAll(retried);
+        }
+        logger.info("Replayed {} ElasticSearch index operations from the outbox, {} failed", completed.size(), errors.size());
+        // retried entries are scheduled after now, so a full batch always has further entries to read
+        return entries.size() == batchSize;
+    }
+
+    /**
+     * Sends one bulk request of replays, recording an error for each id whose operation was not applied
+     */
+    private void replay(List<String> entityIds, byte[] body, Map<String, String> errors) {
+        ESBulkResponse response;
+        try {
+            response = esTemplate.bulk(body);
+        } catch (RestClientException e) {
+            logger.warn("Bulk request replaying {} index operations failed", entityIds.size(), e);
+            for (String entityId : entityIds) {
+                errors.put(entityId, e.toString());
+            }
+            return;
+        }
+        for (int i = 0; i < entityIds.size(); i++) {
+            ESError error = response.getItem(i).getError();
+            if (error != null) {
+                errors.put(entityIds.get(i), error.toString());
+            }
+        }
+    }
+
+    private IndexOutboxEntry fail(IndexOutboxEntry entry, String error, LocalDateTime now) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts).setLastError(error);
+        if (attempts >= maxAttempts) {
+            logger.error("Index operation for id {} failed {} times and is kept as a dead letter: {}", entry.getEntityId(), attempts, error);
+            return entry.setDeadLetter(true);
+        }
+        long backoff = attempts > 30 ? maxBackoffMillis : Math.min(maxBackoffMillis, backoffMillis << (attempts - 1));
+        return entry.setNextAttemptDateTime(now.plusNanos(backoff * 1_000_000));
+    }
+
+    private static final class WritesInFlight {
+
+        private int count;
+        private boolean overlapped;
+
+    }
+
+}
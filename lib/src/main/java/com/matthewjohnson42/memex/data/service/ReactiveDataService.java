@@ -0,0 +1,123 @@
+package com.matthewjohnson42.memex.data.service;
+
+import com.matthewjohnson42.memex.data.converter.DtoEntityConverter;
+import com.matthewjohnson42.memex.data.dto.DtoForEntity;
+import com.matthewjohnson42.memex.data.entity.Entity;
+import com.matthewjohnson42.memex.data.repository.ReactiveRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Non-blocking counterpart of {@link DataService}. Each method returns a Mono that performs the operation when subscribed.
+ *
+ * @param <ID> class of the ID used by both the DTO and the Entity
+ * @param <D>  class of the DTO, used for data transformations and serialization
+ * @param <E>  class of the Entity, used for data persistence
+ * @see DataService
+ * @see ReactiveRepository
+ */
+public abstract class ReactiveDataService<ID, D extends DtoForEntity<ID>, E extends Entity<ID>> {
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    protected DtoEntityConverter<ID, D, E> converter;
+    protected ReactiveRepository<E, ID> repository;
+
+    public ReactiveDataService(DtoEntityConverter<ID, D, E> converter, ReactiveRepository<E, ID> repository) {
+        this.converter = converter;
+        this.repository = repository;
+    }
+
+    public Mono<D> getById(ID id) {
+        return getIfExists(id).map(converter::convertEntity);
+    }
+
+    // pass in date time to allow non-assignment in converter
+    public Mono<D> create(D dto, LocalDateTime createDateTime) {
+        return Mono.fromCallable(() -> {
+                    E entity = converter.convertDto(dto);
+                    checkId(entity);
+                    entity.setCreateDateTime(createDateTime);
+                    entity.setUpdateDateTime(createDateTime);
+                    entity.setVersion(0L);
+                    return entity;
+                })
+                .flatMap(repository::save)
+                .doOnNext(entity -> logger.info("Wrote new object with class {} and id {}", entity.getClass(), entity.getId()))
+                .map(converter::convertEntity);
+    }
+
+    public Mono<D> create(D dto) {
+        return Mono.defer(() -> create(dto, LocalDateTime.now()));
+    }
+
+    /**
+     * Applies the non-null values of the DTO to the stored value in a single repository request.
+     * If the DTO carries a version, the update only succeeds if the stored value is still at that version.
+     *
+     * @see DataService#update(DtoForEntity, LocalDateTime)
+     */
+    // pass in date time to allow non-assignment in converter
+    public Mono<D> update(D dto, LocalDateTime updateDateTime) {
+        return Mono.fromCallable(() -> {
+                    E changes = converter.convertDto(dto);
+                    changes.setUpdateDateTime(updateDateTime);
+                    return changes;
+                })
+                .flatMap(changes -> repository.patch(dto.getId(), changes, dto.getVersion()))
+                .onErrorMap(OptimisticLockingFailureException.class, e -> {
+                    String msg = String.format("Entity with id %s was updated since version %s was read", dto.getId(), dto.getVersion());
+                    logger.error(msg);
+                    return new ResponseStatusException(HttpStatus.CONFLICT, msg, e);
+                })
+                .switchIfEmpty(Mono.error(() -> {
+                    String msg = String.format("No entity found for id %s", dto.getId());
+                    logger.error(msg);
+                    return new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+                }))
+                .doOnNext(entity -> logger.info("Updated values on object with class {} and id {}", entity.getClass(), entity.getId()))
+                .map(converter::convertEntity);
+    }
+
+    public Mono<D> update(D dto) {
+        return Mono.defer(() -> update(dto, LocalDateTime.now()));
+    }
+
+    public Mono<D> deleteById(ID id) {
+        return getIfExists(id)
+                .flatMap(entity -> repository.deleteById(id).thenReturn(entity))
+                .doOnNext(entity -> logger.info("Deleted object with class {} and id {}", entity.getClass(), id))
+                .map(converter::convertEntity);
+    }
+
+    public Mono<D> delete(D dto) {
+        return deleteById(dto.getId());
+    }
+
+    public Mono<Boolean> exists(ID id) {
+        return repository.existsById(id);
+    }
+
+    protected Mono<E> getIfExists(ID id) {
+        return repository.findById(id).switchIfEmpty(Mono.error(() -> {
+            String msg = String.format("No entity found for id %s", id.toString());
+            logger.error(msg);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+        }));
+    }
+
+    private void checkId(E entity) {
+        if (entity.getId() == null) {
+            String msg = String.format("No id found for entity of type %s", entity.getClass().toString());
+            logger.error(msg);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, msg);
+        }
+    }
+
+}